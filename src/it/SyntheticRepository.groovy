@@ -0,0 +1,196 @@
+import java.util.jar.Attributes
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+
+/**
+ * Generates a file based Maven repository full of fake OSGi bundles, used by the performance integration tests.
+ *
+ * The repository contains:
+ * - a chain of parent POMs (GROUP.parent:parent-N), each inheriting from the previous one
+ * - the bundles (GROUP.bundle:bundle-NNNNN), each inheriting from the deepest parent. Bundle i depends on the
+ *   bundles 2i+1 and 2i+2, so the bundles form a binary tree that is only reachable transitively
+ * - an aggregator POM (GROUP:platform) that depends on the root of the tree
+ *
+ * The prebuild and verify scripts of the tests only call prepare() and verify() with the size of their repository.
+ * The tests don't measure wall-clock time (which depends on the machine), but count how often the build fetches each
+ * file of the repository.
+ */
+class SyntheticRepository {
+
+  static final String PLATFORM_ARTIFACT_ID = "platform"
+
+  static final String VERSION = "1.0.0"
+
+  /* The integration tests share a local repository, so each test generates its artifacts under its own groupId */
+  final String platformGroupId
+
+  final String bundleGroupId
+
+  final String parentGroupId
+
+  SyntheticRepository(String groupId) {
+    platformGroupId = groupId
+    bundleGroupId = "${groupId}.bundle"
+    parentGroupId = "${groupId}.parent"
+  }
+
+  /**
+   * Generates the repository of a test, and removes its artifacts from the local repository, so every run resolves
+   * everything the same way
+   */
+  void prepare(File basedir, File localRepositoryPath, int bundleCount, int parentDepth) {
+    generate(new File(basedir, "synthetic-repo"), bundleCount, parentDepth)
+    new File(localRepositoryPath, platformGroupId.replace('.', '/')).deleteDir()
+  }
+
+  /**
+   * Checks the build of a test: nothing ran out of memory, every file of the repository was fetched exactly once,
+   * and the target lists every bundle (and nothing else)
+   */
+  void verify(File basedir, String name, int bundleCount, int parentDepth) {
+    def buildLog = new File(basedir, "build.log").text
+    assert !buildLog.contains("OutOfMemoryError")
+
+    /* prepare() empties the local repository, so every POM and jar (the bundles, the parents and the platform) has to
+       be fetched, but only once, however often it is referenced. Fetching more often is what made large platforms
+       slow, and unlike the time it takes, the count doesn't depend on the machine */
+    def downloads = buildLog.readLines().findAll { it.contains("Downloading from synthetic:") }
+      .collect { it.substring(it.indexOf("file:")) }
+    def repeated = downloads.countBy { it }.findAll { it.value > 1 }
+    assert repeated.isEmpty() : "Fetched more than once: ${repeated.keySet().take(10)}"
+    def expected = 2 * bundleCount + parentDepth + 1
+    assert downloads.size() == expected : "Fetched ${downloads.size()} files from the synthetic repository, not ${expected}"
+
+    def targetFile = new File(basedir, "target/${name}.target")
+    assert targetFile.isFile()
+
+    def target = new XmlSlurper().parse(targetFile)
+    assert target.@name.text() == name
+
+    def paths = target.locations.location.collect { it.@path.text().replace('\\', '/') }
+    assert paths.size() == bundleCount : "Expected ${bundleCount} locations, but found ${paths.size()}"
+    def bundlePath = "/${bundleGroupId.replace('.', '/')}/"
+    def bundleDirs = paths.findAll { it.contains(bundlePath) }.collect { it.substring(it.indexOf(bundlePath)) } as Set
+    for (int i = 0; i < bundleCount; i++)
+      assert bundleDirs.contains("${bundlePath}${bundleId(i)}/${VERSION}".toString()) : "Missing location for bundle ${i}"
+    assert !paths.any { it.contains("/${platformGroupId.replace('.', '/')}/${PLATFORM_ARTIFACT_ID}/") }
+    assert !paths.any { it.contains("/${parentGroupId.replace('.', '/')}/") }
+  }
+
+  static String bundleId(int i) {
+    return String.format("bundle-%05d", i)
+  }
+
+  void generate(File repoDir, int bundleCount, int parentDepth) {
+    if (new File(repoDir, "complete.txt").isFile())
+      return
+
+    for (int p = 0; p < parentDepth; p++) {
+      String parent = (p == 0) ? "" : """
+  <parent>
+    <groupId>${parentGroupId}</groupId>
+    <artifactId>parent-${p - 1}</artifactId>
+    <version>${VERSION}</version>
+  </parent>"""
+      writePom(repoDir, parentGroupId, "parent-${p}", """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>${parent}
+  <groupId>${parentGroupId}</groupId>
+  <artifactId>parent-${p}</artifactId>
+  <version>${VERSION}</version>
+  <packaging>pom</packaging>
+  <properties>
+    <synthetic.level.${p}>${p}</synthetic.level.${p}>
+  </properties>
+</project>
+""")
+    }
+
+    String bundleParent = (parentDepth == 0) ? "" : """
+  <parent>
+    <groupId>${parentGroupId}</groupId>
+    <artifactId>parent-${parentDepth - 1}</artifactId>
+    <version>${VERSION}</version>
+  </parent>"""
+
+    for (int i = 0; i < bundleCount; i++) {
+      StringBuilder deps = new StringBuilder()
+      for (int child = 2 * i + 1; (child <= 2 * i + 2) && (child < bundleCount); child++) {
+        deps.append("""
+    <dependency>
+      <groupId>${bundleGroupId}</groupId>
+      <artifactId>${bundleId(child)}</artifactId>
+      <version>${VERSION}</version>
+    </dependency>""")
+      }
+      String artifactId = bundleId(i)
+      writePom(repoDir, bundleGroupId, artifactId, """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>${bundleParent}
+  <groupId>${bundleGroupId}</groupId>
+  <artifactId>${artifactId}</artifactId>
+  <version>${VERSION}</version>
+  <dependencies>${deps}
+  </dependencies>
+</project>
+""")
+      writeBundle(repoDir, i, bundleCount)
+    }
+
+    writePom(repoDir, platformGroupId, PLATFORM_ARTIFACT_ID, """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>${platformGroupId}</groupId>
+  <artifactId>${PLATFORM_ARTIFACT_ID}</artifactId>
+  <version>${VERSION}</version>
+  <packaging>pom</packaging>
+  <dependencies>
+    <dependency>
+      <groupId>${bundleGroupId}</groupId>
+      <artifactId>${bundleId(0)}</artifactId>
+      <version>${VERSION}</version>
+    </dependency>
+  </dependencies>
+</project>
+""")
+
+    new File(repoDir, "complete.txt").text = "${bundleCount} bundles, ${parentDepth} parents"
+  }
+
+  File artifactDir(File repoDir, String groupId, String artifactId) {
+    File dir = new File(repoDir, "${groupId.replace('.', '/')}/${artifactId}/${VERSION}")
+    dir.mkdirs()
+    return dir
+  }
+
+  void writePom(File repoDir, String groupId, String artifactId, String content) {
+    new File(artifactDir(repoDir, groupId, artifactId), "${artifactId}-${VERSION}.pom").setText(content, "UTF-8")
+  }
+
+  void writeBundle(File repoDir, int i, int bundleCount) {
+    String artifactId = bundleId(i)
+    String bsn = "${bundleGroupId}.${artifactId.replace('-', '_')}"
+    String pkg = "${bsn}.api"
+
+    Manifest manifest = new Manifest()
+    Attributes main = manifest.getMainAttributes()
+    main.put(Attributes.Name.MANIFEST_VERSION, "1.0")
+    main.putValue("Bundle-ManifestVersion", "2")
+    main.putValue("Bundle-SymbolicName", bsn)
+    main.putValue("Bundle-Version", VERSION)
+    main.putValue("Export-Package", "${pkg};version=\"${VERSION}\"")
+    if (i > 0) {
+      String parentPkg = "${bundleGroupId}.${bundleId((int) ((i - 1) / 2)).replace('-', '_')}.api"
+      main.putValue("Import-Package", "${parentPkg};version=\"[1.0,2)\"")
+    }
+
+    File jar = new File(artifactDir(repoDir, bundleGroupId, artifactId), "${artifactId}-${VERSION}.jar")
+    new JarOutputStream(new FileOutputStream(jar), manifest).withStream { JarOutputStream out ->
+      out.putNextEntry(new JarEntry("${pkg.replace('.', '/')}/Api.class"))
+      /* Just the class file header (magic and Java 8 version) */
+      out.write([0xCA, 0xFE, 0xBA, 0xBE, 0x00, 0x00, 0x00, 0x34] as byte[])
+      out.closeEntry()
+    }
+  }
+}
@@ -0,0 +1,4 @@
+def repository = new GroovyClassLoader(getClass().classLoader)
+  .parseClass(new File(itSourceDirectory, "SyntheticRepository.groovy"))
+repository.newInstance("synthetic.deep").prepare(basedir, localRepositoryPath, 500, 60)
+return true
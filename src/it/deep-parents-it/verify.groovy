@@ -0,0 +1,4 @@
+def repository = new GroovyClassLoader(getClass().classLoader)
+  .parseClass(new File(itSourceDirectory, "SyntheticRepository.groovy"))
+repository.newInstance("synthetic.deep").verify(basedir, "deep-parents-it", 500, 60)
+return true
@@ -0,0 +1,4 @@
+def repository = new GroovyClassLoader(getClass().classLoader)
+  .parseClass(new File(itSourceDirectory, "SyntheticRepository.groovy"))
+repository.newInstance("synthetic.large").prepare(basedir, localRepositoryPath, 3000, 3)
+return true
@@ -1,3 +1,7 @@
-File touchFile = new File( basedir, "target/touch.txt" );
+File targetFile = new File( basedir, "target/simple.target" );
 
-assert touchFile.isFile()
+assert targetFile.isFile()
+
+def target = new XmlSlurper().parse( targetFile )
+assert target.@name.text() == "Simple Target"
+assert target.locations.location.size() == 0
@@ -0,0 +1,85 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.dependency.utils.DependencyUtil;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Base class for emitters that render their output as text and write it to a file (or to the log if there is no file)
+ */
+public abstract class AbstractFileEmitter implements TargetEmitter {
+
+  protected final File    outputFile;
+
+  protected final boolean appendOutput;
+
+  /**
+   * @param outputFile the file to write to, or null to write to the log
+   * @param appendOutput true to append to the file instead of replacing it
+   */
+  protected AbstractFileEmitter(File outputFile, boolean appendOutput) {
+    this.outputFile = outputFile;
+    this.appendOutput = appendOutput;
+  }
+
+  /**
+   * @param target the resolved target
+   * @param log the log
+   * @return the contents of the output
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected abstract String render(ResolvedTarget target, Log log) throws MojoExecutionException;
+
+  @Override
+  public void emit(ResolvedTarget target, Log log) throws MojoExecutionException {
+    String output = render(target, log);
+    try {
+      if (outputFile == null) {
+        DependencyUtil.log(output, log);
+      }
+      else if ((appendOutput == false) && outputFile.isFile() && output.equals(FileUtils.fileRead(outputFile))) {
+
+        /* Leave the file (and its timestamp) alone, so that tools watching it don't reload it */
+        log.debug(outputFile + " is unchanged");
+      }
+      else {
+        DependencyUtil.write(output, outputFile, appendOutput, log);
+      }
+    }
+    catch (IOException e) {
+      throw new MojoExecutionException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @param value the value
+   * @return the value escaped for use as XML text or attribute
+   */
+  protected static String escapeXml(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '&':
+        sb.append("&amp;");
+        break;
+      case '<':
+        sb.append("&lt;");
+        break;
+      case '>':
+        sb.append("&gt;");
+        break;
+      case '"':
+        sb.append("&quot;");
+        break;
+      default:
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,203 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Goal reports what PDE has to scan for every location of the target that <code>build-target</code> would write: the
+ * files and bytes in the directory, the jars that aren't the resolved artifact, and the entries and classes of the
+ * jars. The locations are sorted by size and written as JSON and HTML reports.
+ */
+@Mojo(name = "analyze-target", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class AnalyzeTarget extends BuildTarget {
+
+  /**
+   * Directory the footprint.json and footprint.html reports are written to
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "reportDirectory", defaultValue = "${project.build.directory}/osgi-target")
+  protected File reportDirectory;
+
+  @Override
+  protected void doExecute() throws MojoExecutionException, MojoFailureException {
+    ResolvedTarget target = resolveTarget();
+
+    /* Several artifacts can share a location (ie. classifiers), but PDE scans it only once */
+    final Map<File, List<Artifact>> byLocation = new LinkedHashMap<>();
+    for (Map.Entry<Artifact, File> entry : target.getLocations().entrySet()) {
+      List<Artifact> artifacts = byLocation.get(entry.getValue());
+      if (artifacts == null) {
+        artifacts = new ArrayList<>();
+        byLocation.put(entry.getValue(), artifacts);
+      }
+      artifacts.add(entry.getKey());
+    }
+
+    List<Callable<LocationFootprint>> tasks = new ArrayList<>();
+    for (final Map.Entry<File, List<Artifact>> entry : byLocation.entrySet()) {
+      tasks.add(new Callable<LocationFootprint>() {
+        @Override
+        public LocationFootprint call() throws IOException {
+          Set<File> files = new HashSet<>();
+          List<String> names = new ArrayList<>();
+          for (Artifact artifact : entry.getValue()) {
+            files.add(artifact.getFile());
+            names.add(artifact.getId());
+          }
+          return LocationFootprint.scan(entry.getKey(), files, names);
+        }
+      });
+    }
+    List<LocationFootprint> footprints =
+      new ArrayList<>(ParallelTasks.run(ParallelTasks.getThreadCount(threads), tasks));
+    Collections.sort(footprints, new Comparator<LocationFootprint>() {
+      @Override
+      public int compare(LocationFootprint a, LocationFootprint b) {
+        int result = Long.compare(b.getBytes(), a.getBytes());
+        if (result == 0)
+          result = a.getLocation().compareTo(b.getLocation());
+        return result;
+      }
+    });
+
+    long files = 0, bytes = 0, foreign = 0, classes = 0;
+    for (LocationFootprint footprint : footprints) {
+      files += footprint.getFiles();
+      bytes += footprint.getBytes();
+      foreign += footprint.getForeignJars().size();
+      classes += footprint.getClasses();
+    }
+    getLog().info("The target has " + footprints.size() + " locations with " + files + " files (" + bytes
+      + " bytes), " + foreign + " jars that aren't resolved artifacts and " + classes + " classes");
+    for (int i = 0; (i < 10) && (i < footprints.size()); i++) {
+      LocationFootprint footprint = footprints.get(i);
+      getLog().info("  " + footprint.getBytes() + " bytes in " + footprint.getFiles() + " files: "
+        + footprint.getLocation());
+    }
+
+    try {
+      File jsonFile = new File(reportDirectory, "footprint.json");
+      File htmlFile = new File(reportDirectory, "footprint.html");
+      FileUtils.forceMkdir(reportDirectory);
+      FileUtils.fileWrite(jsonFile, "UTF-8", toJson(target.getName(), footprints));
+      FileUtils.fileWrite(htmlFile, "UTF-8", toHtml(target.getName(), footprints));
+      getLog().info("Wrote " + jsonFile + " and " + htmlFile);
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  static String toJson(String name, List<LocationFootprint> footprints) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n  \"target\": ").append(jsonString(name)).append(",\n  \"locations\": [");
+    boolean first = true;
+    for (LocationFootprint footprint : footprints) {
+      sb.append(first ? "\n" : ",\n");
+      first = false;
+      sb.append("    {\"location\": ").append(jsonString(footprint.getLocation().getAbsolutePath()));
+      sb.append(", \"artifacts\": ").append(jsonArray(footprint.getArtifacts()));
+      sb.append(", \"files\": ").append(footprint.getFiles());
+      sb.append(", \"bytes\": ").append(footprint.getBytes());
+      sb.append(", \"jars\": ").append(footprint.getJars());
+      sb.append(", \"foreignJars\": ").append(jsonArray(footprint.getForeignJars()));
+      sb.append(", \"jarEntries\": ").append(footprint.getJarEntries());
+      sb.append(", \"classes\": ").append(footprint.getClasses());
+      sb.append('}');
+    }
+    sb.append("\n  ]\n}\n");
+    return sb.toString();
+  }
+
+  static String toHtml(String name, List<LocationFootprint> footprints) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>\n<html>\n<head><meta charset=\"UTF-8\"><title>Footprint of ");
+    sb.append(AbstractFileEmitter.escapeXml(name));
+    sb.append("</title></head>\n<body>\n<h1>Footprint of ");
+    sb.append(AbstractFileEmitter.escapeXml(name));
+    sb.append("</h1>\n<table border=\"1\">\n");
+    sb.append("<tr><th>Location</th><th>Artifacts</th><th>Files</th><th>Bytes</th><th>Jars</th>"
+      + "<th>Foreign jars</th><th>Jar entries</th><th>Classes</th></tr>\n");
+    for (LocationFootprint footprint : footprints) {
+      sb.append("<tr><td>").append(AbstractFileEmitter.escapeXml(footprint.getLocation().getAbsolutePath()));
+      sb.append("</td><td>").append(AbstractFileEmitter.escapeXml(join(footprint.getArtifacts())));
+      sb.append("</td><td>").append(footprint.getFiles());
+      sb.append("</td><td>").append(footprint.getBytes());
+      sb.append("</td><td>").append(footprint.getJars());
+      sb.append("</td><td>").append(AbstractFileEmitter.escapeXml(join(footprint.getForeignJars())));
+      sb.append("</td><td>").append(footprint.getJarEntries());
+      sb.append("</td><td>").append(footprint.getClasses());
+      sb.append("</td></tr>\n");
+    }
+    sb.append("</table>\n</body>\n</html>\n");
+    return sb.toString();
+  }
+
+  private static String join(List<String> values) {
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0)
+        sb.append(", ");
+      sb.append(value);
+    }
+    return sb.toString();
+  }
+
+  private static String jsonArray(List<String> values) {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < values.size(); i++) {
+      if (i > 0)
+        sb.append(", ");
+      sb.append(jsonString(values.get(i)));
+    }
+    return sb.append(']').toString();
+  }
+
+  static String jsonString(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      default:
+        if (c < 0x20)
+          sb.append(String.format("\\u%04x", (int) c));
+        else
+          sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
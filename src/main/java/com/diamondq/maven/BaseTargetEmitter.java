@@ -0,0 +1,162 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Writes the shared base target of a layered target. The locations are sorted and the sequence number is only bumped
+ * when the locations change. Products don't necessarily resolve the same base artifacts, so the base locations of every
+ * product that shares the base target are recorded next to it (in <code>&lt;base target&gt;.products</code>), and the
+ * base target lists their union. It then only changes when the base of one of the products changes, and not just
+ * because another product was built last.
+ */
+public class BaseTargetEmitter extends PdeTargetEmitter {
+
+  private final String       name;
+
+  private final TargetLayers layers;
+
+  private final File         product;
+
+  /**
+   * @param outputFile the base target file
+   * @param name the name of the base target
+   * @param layers the rules that decide which artifacts are in the base target
+   */
+  public BaseTargetEmitter(File outputFile, String name, TargetLayers layers) {
+    this(outputFile, name, layers, null);
+  }
+
+  /**
+   * @param outputFile the base target file
+   * @param name the name of the base target
+   * @param layers the rules that decide which artifacts are in the base target
+   * @param environment the environment of the target (or null if it is built for any platform)
+   */
+  public BaseTargetEmitter(File outputFile, String name, TargetLayers layers, TargetEnvironment environment) {
+    this(outputFile, name, layers, environment, null);
+  }
+
+  /**
+   * @param outputFile the base target file
+   * @param name the name of the base target
+   * @param layers the rules that decide which artifacts are in the base target
+   * @param environment the environment of the target (or null if it is built for any platform)
+   * @param product the target of the product that shares the base target (or null if the base locations of the other
+   *          products aren't merged in)
+   */
+  public BaseTargetEmitter(File outputFile, String name, TargetLayers layers, TargetEnvironment environment,
+    File product) {
+    super(outputFile, false, null, null, environment);
+    this.name = name;
+    this.layers = layers;
+    this.product = product;
+  }
+
+  @Override
+  public String getName() {
+    return "base PDE target";
+  }
+
+  @Override
+  protected Collection<File> getLocations(ResolvedTarget target) {
+    Collection<File> locations = getProductLocations(target);
+    if ((product == null) || (outputFile == null))
+      return locations;
+
+    /* Products that were removed, and locations that were removed (ie. replaced snapshots), are left out */
+    Properties products = readProducts();
+    for (String key : products.stringPropertyNames()) {
+      if (key.equals(product.getAbsolutePath()) || (new File(key).isFile() == false))
+        continue;
+      for (String path : products.getProperty(key).split(File.pathSeparator))
+        if ((path.isEmpty() == false) && new File(path).exists())
+          locations.add(new File(path));
+    }
+    return locations;
+  }
+
+  private Collection<File> getProductLocations(ResolvedTarget target) {
+    Collection<File> locations = new TreeSet<>();
+    for (Map.Entry<Artifact, File> entry : target.getLocations().entrySet())
+      if (layers.isBase(entry.getKey()))
+        locations.add(entry.getValue().getAbsoluteFile());
+    return locations;
+  }
+
+  @Override
+  public void emit(ResolvedTarget target, Log log) throws MojoExecutionException {
+    super.emit(target, log);
+    if ((product == null) || (outputFile == null))
+      return;
+    StringBuilder sb = new StringBuilder();
+    for (File location : getProductLocations(target)) {
+      if (sb.length() > 0)
+        sb.append(File.pathSeparatorChar);
+      sb.append(location.getPath());
+    }
+    Properties products = readProducts();
+    if (sb.toString().equals(products.getProperty(product.getAbsolutePath())))
+      return;
+    for (String key : products.stringPropertyNames())
+      if (new File(key).isFile() == false)
+        products.remove(key);
+    products.setProperty(product.getAbsolutePath(), sb.toString());
+    try (OutputStream stream = new FileOutputStream(getProductsFile())) {
+      products.store(stream, null);
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  private File getProductsFile() {
+    return new File(outputFile.getPath() + ".products");
+  }
+
+  private Properties readProducts() {
+    Properties products = new Properties();
+    File file = getProductsFile();
+    if (file.isFile()) {
+      try (InputStream stream = new FileInputStream(file)) {
+        products.load(stream);
+      }
+      catch (IOException | IllegalArgumentException ex) {
+        products.clear();
+      }
+    }
+    return products;
+  }
+
+  @Override
+  protected String render(ResolvedTarget target, Log log) throws MojoExecutionException {
+    Collection<File> locations = getLocations(target);
+    int sequenceNumber = readSequenceNumber(outputFile);
+    if (sequenceNumber == 0)
+      return render(name, 1, locations);
+    String output = render(name, sequenceNumber, locations);
+    try {
+      if (output.equals(FileUtils.fileRead(outputFile)) == false) {
+        log.info("The base target " + outputFile + " has changed");
+        output = render(name, sequenceNumber + 1, locations);
+      }
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+    return output;
+  }
+}
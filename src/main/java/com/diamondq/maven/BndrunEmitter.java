@@ -0,0 +1,56 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.util.jar.Attributes;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writes a bnd <code>-runbundles</code> instruction that pins every bundle of the target to its exact version. The file
+ * is meant to be pulled into a .bndrun file with <code>-include</code>. Artifacts that aren't bundles are skipped.
+ */
+public class BndrunEmitter extends AbstractFileEmitter {
+
+  /**
+   * @param outputFile the file to write
+   */
+  public BndrunEmitter(File outputFile) {
+    super(outputFile, false);
+  }
+
+  @Override
+  public String getName() {
+    return "bnd run bundles";
+  }
+
+  @Override
+  protected String render(ResolvedTarget target, Log log) throws MojoExecutionException {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# Generated from the dependencies of ");
+    sb.append(target.getName());
+    sb.append("\n-runbundles: ");
+    boolean first = true;
+    for (Artifact artifact : target.getArtifacts()) {
+      Attributes manifest = target.getManifest(artifact);
+      String symbolicName = BundleManifests.getSymbolicName(manifest);
+      if (symbolicName == null) {
+        log.debug("Skipping " + artifact + " in the run bundles since it's not a bundle");
+        continue;
+      }
+      String version = BundleManifests.getVersion(manifest);
+      if (first == false)
+        sb.append(",\\\n\t");
+      first = false;
+      sb.append(symbolicName);
+      sb.append(";version='[");
+      sb.append(version);
+      sb.append(',');
+      sb.append(version);
+      sb.append("]'");
+    }
+    sb.append('\n');
+    return sb.toString();
+  }
+}
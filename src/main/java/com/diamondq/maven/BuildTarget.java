@@ -3,18 +3,37 @@ package com.diamondq.maven;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Exclusion;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -26,8 +45,6 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.plugins.dependency.utils.DependencySilentLog;
 import org.apache.maven.plugins.dependency.utils.DependencyStatusSets;
 import org.apache.maven.plugins.dependency.utils.DependencyUtil;
-import org.apache.maven.plugins.dependency.utils.filters.ResolveFileFilter;
-import org.apache.maven.plugins.dependency.utils.markers.SourcesFileMarkerHandler;
 import org.apache.maven.plugins.dependency.utils.translators.ArtifactTranslator;
 import org.apache.maven.plugins.dependency.utils.translators.ClassifierTypeTranslator;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
@@ -70,6 +87,8 @@ import org.codehaus.plexus.util.StringUtils;
   defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
 public class BuildTarget extends AbstractMojo {
 
+  private static final Pattern     SHA1 = Pattern.compile("[0-9a-f]{40}");
+
   /**
    * To look up Archiver/UnArchiver implementations
    */
@@ -149,6 +168,178 @@ public class BuildTarget extends AbstractMojo {
   @Parameter(property = "extraDeps", defaultValue = "")
   protected String                 extraDeps;
 
+  /**
+   * If true, bundles that declare <code>Eclipse-BundleShape: dir</code> are extracted into the
+   * {@link #bundleCacheDirectory}, and the target references the extracted directory instead of the jar.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "extractDirectoryBundles", defaultValue = "false")
+  protected boolean                extractDirectoryBundles;
+
+  /**
+   * Directory where directory shaped bundles are extracted to. Each bundle is stored under the hash of its jar, so it
+   * is only extracted again once the jar changes.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "bundleCacheDirectory", defaultValue = "${project.build.directory}/osgi-target/bundles")
+  protected File                   bundleCacheDirectory;
+
+  /**
+   * Directory for the state the plugin keeps between executions (checksums, snapshot versions, ...)
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "workDirectory", defaultValue = "${project.build.directory}/osgi-target")
+  protected File                   workDirectory;
+
+  /**
+   * If true, every snapshot is copied into the {@link #workDirectory}, in a directory named after the checksum of its
+   * bytes, and the target references that copy. The target then keeps pointing to the same directory until the bytes
+   * of the snapshot really change, whether it was deployed or installed locally.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "pinSnapshots", defaultValue = "false")
+  protected boolean                pinSnapshots;
+
+  /**
+   * If true, artifacts that are built by the current reactor are referenced through the build output directory of
+   * their module (ie. <code>target/classes</code>, which needs to contain the generated
+   * <code>META-INF/MANIFEST.MF</code>) instead of the packaged or installed jar. The location is a directory in the
+   * {@link #workDirectory} that links the output directory as <code>&lt;symbolic name&gt;_&lt;version&gt;</code>. PDE
+   * then sees a change as soon as the module is compiled, without packaging or installing it.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "useReactorOutput", defaultValue = "false")
+  protected boolean                useReactorOutput;
+
+  /**
+   * Comma separated list of root bundles, by symbolic name or groupId:artifactId (a trailing * matches any suffix). If
+   * set, the target only contains the roots, the {@link #extraDeps}, and the bundles needed to satisfy their mandatory
+   * Import-Package, Require-Bundle and Fragment-Host requirements (transitively), along with the fragments of every
+   * included bundle.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "rootBundles", defaultValue = "")
+  protected String                 rootBundles;
+
+  /**
+   * The operating system (ie. linux, win32, macosx) the target is built for. Fragments whose Eclipse-PlatformFilter or
+   * Bundle-NativeCode excludes it are left out, and it is recorded in the environment of the PDE target.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "os")
+  protected String                 os;
+
+  /**
+   * The windowing system (ie. gtk, win32, cocoa) the target is built for. See {@link #os}.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "ws")
+  protected String                 ws;
+
+  /**
+   * The processor architecture (ie. x86_64, aarch64) the target is built for. See {@link #os}.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "arch")
+  protected String                 arch;
+
+  /**
+   * File that records the resolved artifacts of the target (coordinates, path, size and checksum), along with a hash
+   * of the dependencies of the POM and the filter settings. It is written after every full resolution.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "lockFile")
+  protected File                   lockFile;
+
+  /**
+   * If true, and the {@link #lockFile} was written for the same dependencies and filter settings, the target is
+   * produced from the lock file alone. The locked files are only checked for their existence and size. Combined with
+   * the <code>build-target-lazy</code> goal, nothing is resolved at all.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "replayLockFile", defaultValue = "false")
+  protected boolean                replayLockFile;
+
+  /**
+   * If true, the class file version of every class in the target is checked against {@link #maxJavaVersion} and the
+   * Bundle-RequiredExecutionEnvironment of its bundle before the target is written
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "checkClassVersions", defaultValue = "false")
+  protected boolean                checkClassVersions;
+
+  /**
+   * The Java version of the runtime (ie. 11). Artifacts with classes compiled for a later Java version are reported.
+   * Zero or less only checks the Bundle-RequiredExecutionEnvironment.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "maxJavaVersion", defaultValue = "0")
+  protected int                    maxJavaVersion;
+
+  /**
+   * If true, the build fails when {@link #checkClassVersions} finds a class that is too recent, instead of only
+   * logging a warning
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "failOnClassVersion", defaultValue = "false")
+  protected boolean                failOnClassVersion;
+
+  /**
+   * If true, the target is checked for split packages and duplicate classes (classes or packages that more than one
+   * artifact provides, not counting fragments and their host) before it is written
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "checkClassOverlaps", defaultValue = "false")
+  protected boolean                checkClassOverlaps;
+
+  /**
+   * If true, the build fails when {@link #checkClassOverlaps} finds a duplicate class, instead of only logging a
+   * warning. Split packages are always only reported.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "failOnDuplicateClasses", defaultValue = "false")
+  protected boolean                failOnDuplicateClasses;
+
+  /**
+   * The maximum number of artifact resolutions running at the same time across all the executions of the build (ie.
+   * the modules of a <code>-T</code> build). Zero or less is unlimited. The first execution of the build decides the
+   * limit. Identical resolutions that are already running are always joined instead of being started again.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "maxConcurrentResolutions", defaultValue = "0")
+  protected int                    maxConcurrentResolutions;
+
+  /**
+   * The number of threads used to process bundles. Zero or less uses one thread per processor.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "threads", defaultValue = "0")
+  protected int                    threads;
+
+  private FileStampCache           checksums;
+
+  private final Map<Artifact, File> pinnedSnapshots = new HashMap<>();
+
+  private MarkerStore              markerStore;
+
   // Mojo methods -----------------------------------------------------------
 
   /*
@@ -438,7 +629,8 @@ public class BuildTarget extends AbstractMojo {
   protected boolean              overWriteReleases;
 
   /**
-   * Overwrite snapshot artifacts
+   * Overwrite snapshot artifacts. With {@link #pinSnapshots}, the pinned copy is copied again on every execution,
+   * even if a copy with the same checksum is already there.
    *
    * @since 1.0
    */
@@ -566,7 +758,7 @@ public class BuildTarget extends AbstractMojo {
   protected String               includeGroupIds;
 
   /**
-   * Directory to store flag files
+   * Directory to store the marker file, which records the artifacts that were already processed
    *
    * @since 2.0
    */
@@ -627,10 +819,12 @@ public class BuildTarget extends AbstractMojo {
     // add filters in well known order, least specific to most specific
     FilterArtifacts filter = new FilterArtifacts();
 
-    filter.addFilter(new ProjectTransitivityFilter(getProject().getDependencyArtifacts(), this.excludeTransitive));
+    filter.addFilter(new ProjectTransitivityFilter(getDirectDependencyArtifacts(), this.excludeTransitive));
 
-    filter.addFilter(new ScopeFilter(DependencyUtil.cleanToBeTokenizedString(this.includeScope),
-      DependencyUtil.cleanToBeTokenizedString(this.excludeScope)));
+    if (isScopeFilterRequired()) {
+      filter.addFilter(new ScopeFilter(DependencyUtil.cleanToBeTokenizedString(this.includeScope),
+        DependencyUtil.cleanToBeTokenizedString(this.excludeScope)));
+    }
 
     filter.addFilter(new TypeFilter(DependencyUtil.cleanToBeTokenizedString(this.includeTypes),
       DependencyUtil.cleanToBeTokenizedString(this.excludeTypes)));
@@ -645,7 +839,7 @@ public class BuildTarget extends AbstractMojo {
       DependencyUtil.cleanToBeTokenizedString(this.excludeArtifactIds)));
 
     // start with all artifacts.
-    Set<Artifact> artifacts = getProject().getArtifacts();
+    Set<Artifact> artifacts = getCandidateArtifacts();
 
     if (includeParents) {
       // add dependencies parents
@@ -677,6 +871,31 @@ public class BuildTarget extends AbstractMojo {
     return status;
   }
 
+  /**
+   * @return the artifacts that the filters are applied to. By default, these are the artifacts Maven resolved for the
+   *         project before the mojo was executed.
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Set<Artifact> getCandidateArtifacts() throws MojoExecutionException {
+    return getProject().getArtifacts();
+  }
+
+  /**
+   * @return the direct dependencies of the project, used when {@link #excludeTransitive} is set.
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Set<Artifact> getDirectDependencyArtifacts() throws MojoExecutionException {
+    return getProject().getDependencyArtifacts();
+  }
+
+  /**
+   * @return true if the candidate artifacts still need to be filtered by {@link #includeScope} and
+   *         {@link #excludeScope}, or false if they were already limited to those scopes when they were resolved.
+   */
+  protected boolean isScopeFilterRequired() {
+    return true;
+  }
+
   private MavenProject buildProjectFromArtifact(Artifact artifact) throws MojoExecutionException {
     try {
       return projectBuilder.build(artifact, session.getProjectBuildingRequest()).getProject();
@@ -697,8 +916,7 @@ public class BuildTarget extends AbstractMojo {
       try {
         ProjectBuildingRequest buildingRequest = newResolveArtifactProjectBuildingRequest();
 
-        Artifact resolvedArtifact =
-          artifactResolver.resolveArtifact(buildingRequest, project.getArtifact()).getArtifact();
+        Artifact resolvedArtifact = resolveArtifact(buildingRequest, project.getArtifact());
 
         artifacts.add(resolvedArtifact);
       }
@@ -792,7 +1010,7 @@ public class BuildTarget extends AbstractMojo {
     Set<Artifact> resolvedArtifacts = new LinkedHashSet<Artifact>();
     for (ArtifactCoordinate coordinate : coordinates) {
       try {
-        Artifact artifact = artifactResolver.resolveArtifact(buildingRequest, coordinate).getArtifact();
+        Artifact artifact = resolveArtifact(buildingRequest, coordinate);
         resolvedArtifacts.add(artifact);
       }
       catch (ArtifactResolverException ex) {
@@ -807,6 +1025,64 @@ public class BuildTarget extends AbstractMojo {
     return resolvedArtifacts;
   }
 
+  /**
+   * Resolves an artifact through the {@link ResolutionCoordinator} of the session
+   *
+   * @param buildingRequest the building request
+   * @param coordinate the coordinate
+   * @return the resolved artifact
+   * @throws ArtifactResolverException if the artifact can't be resolved
+   */
+  protected Artifact resolveArtifact(final ProjectBuildingRequest buildingRequest,
+    final ArtifactCoordinate coordinate) throws ArtifactResolverException {
+    String key = coordinate.getGroupId() + ":" + coordinate.getArtifactId() + ":" + coordinate.getExtension() + ":"
+      + StringUtils.clean(coordinate.getClassifier()) + ":" + coordinate.getVersion();
+    return getResolutionCoordinator().resolve(getResolutionKey(buildingRequest, key), new Callable<Artifact>() {
+      @Override
+      public Artifact call() throws ArtifactResolverException {
+        return artifactResolver.resolveArtifact(buildingRequest, coordinate).getArtifact();
+      }
+    });
+  }
+
+  /**
+   * Resolves an artifact through the {@link ResolutionCoordinator} of the session
+   *
+   * @param buildingRequest the building request
+   * @param artifact the artifact
+   * @return the resolved artifact
+   * @throws ArtifactResolverException if the artifact can't be resolved
+   */
+  protected Artifact resolveArtifact(final ProjectBuildingRequest buildingRequest, final Artifact artifact)
+    throws ArtifactResolverException {
+    String extension =
+      artifact.getArtifactHandler() == null ? artifact.getType() : artifact.getArtifactHandler().getExtension();
+    String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + extension + ":"
+      + StringUtils.clean(artifact.getClassifier()) + ":" + artifact.getVersion();
+    return getResolutionCoordinator().resolve(getResolutionKey(buildingRequest, key), new Callable<Artifact>() {
+      @Override
+      public Artifact call() throws ArtifactResolverException {
+        return artifactResolver.resolveArtifact(buildingRequest, artifact).getArtifact();
+      }
+    });
+  }
+
+  /**
+   * @return the resolution coordinator shared by all the executions of the build
+   */
+  protected ResolutionCoordinator getResolutionCoordinator() {
+    return ResolutionCoordinator.get(session.getRepositorySession(), maxConcurrentResolutions);
+  }
+
+  /* The same coordinates can resolve differently from different repositories */
+  private static String getResolutionKey(ProjectBuildingRequest buildingRequest, String coordinates) {
+    StringBuilder sb = new StringBuilder(coordinates);
+    if (buildingRequest.getRemoteRepositories() != null)
+      for (ArtifactRepository repository : buildingRequest.getRemoteRepositories())
+        sb.append(' ').append(repository.getId()).append('=').append(repository.getUrl());
+    return sb.toString();
+  }
+
   /**
    * @return Returns the markersDirectory.
    */
@@ -821,7 +1097,37 @@ public class BuildTarget extends AbstractMojo {
     this.markersDirectory = theMarkersDirectory;
   }
 
-  // TODO: Set marker files.
+  /**
+   * @return the store of the artifacts that were already processed
+   * @throws MojoExecutionException if the store can't be read
+   */
+  protected MarkerStore getMarkerStore() throws MojoExecutionException {
+    if (markerStore == null) {
+      try {
+        markerStore = new MarkerStore(new File(markersDirectory, "markers.lst"));
+      }
+      catch (IOException ex) {
+        throw new MojoExecutionException(ex.getMessage(), ex);
+      }
+    }
+    return markerStore;
+  }
+
+  /**
+   * Marks the artifacts as processed, so that later executions report them as skipped
+   *
+   * @param artifacts the artifacts
+   * @throws MojoExecutionException if the markers can't be written
+   */
+  protected void setMarkers(Collection<Artifact> artifacts) throws MojoExecutionException {
+    try {
+      int count = getMarkerStore().markAll(artifacts);
+      getLog().debug("Marked " + count + " new artifacts as processed");
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
 
   /**
    * @return true, if the groupId should be prepended to the filename.
@@ -867,6 +1173,100 @@ public class BuildTarget extends AbstractMojo {
   @Parameter(property = "outputFile")
   protected File    outputFile;
 
+  /**
+   * If specified, a bnd <code>-runbundles</code> instruction listing every bundle of the target is written to this file.
+   * It's meant to be pulled into a .bndrun file with <code>-include</code>.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "bndrunFile")
+  protected File    bndrunFile;
+
+  /**
+   * If specified, a Karaf features.xml with a feature installing every artifact of the target is written to this file.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "featuresFile")
+  protected File    featuresFile;
+
+  /**
+   * The name of the feature in the {@link #featuresFile}
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "featureName", defaultValue = "${project.artifactId}")
+  protected String  featureName;
+
+  /**
+   * The version of the feature in the {@link #featuresFile}
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "featureVersion", defaultValue = "${project.version}")
+  protected String  featureVersion;
+
+  /**
+   * If specified, an OSGi Repository (R5) index of every bundle of the target is written to this file (gzipped if the
+   * name ends with <code>.gz</code>, ie. <code>index.xml.gz</code>). Only new or changed bundles are scanned.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "indexFile")
+  protected File    indexFile;
+
+  /**
+   * The index from the exported packages of the target to the bundles exporting them, that the
+   * <code>which-bundle</code> goal queries. Only new or changed bundles have their manifest read.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "packageIndexFile", defaultValue = WhichBundle.DEFAULT_PACKAGE_INDEX_FILE)
+  protected File    packageIndexFile;
+
+  /**
+   * If false, the {@link #packageIndexFile} isn't written
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "writePackageIndex", defaultValue = "true")
+  protected boolean writePackageIndex;
+
+  /**
+   * If specified, the target is layered: the artifacts matching {@link #baseIncludes} are written to this shared base
+   * target, and the {@link #outputFile} only lists the other artifacts and references the base target.
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "baseTargetFile")
+  protected File    baseTargetFile;
+
+  /**
+   * The name of the {@link #baseTargetFile}
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "baseTargetName", defaultValue = "Base Platform")
+  protected String  baseTargetName;
+
+  /**
+   * Comma separated list of <code>groupId[:artifactId]</code> patterns (<code>*</code> matches any characters) of the
+   * artifacts in the {@link #baseTargetFile}
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "baseIncludes", defaultValue = "")
+  protected String  baseIncludes;
+
+  /**
+   * Comma separated list of <code>groupId[:artifactId]</code> patterns of the artifacts that stay in the product target,
+   * even if they match {@link #baseIncludes}
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "baseExcludes", defaultValue = "")
+  protected String  baseExcludes;
+
   /**
    * This method resolves the dependency artifacts from the project.
    *
@@ -965,8 +1365,78 @@ public class BuildTarget extends AbstractMojo {
 
   }
 
+  /**
+   * @return the file that the {@link SnapshotTracker} of this execution keeps its state in. Every output file has its
+   *         own, so executions that share the {@link #workDirectory} don't see each other's locations as a change.
+   */
+  protected File getSnapshotStateFile() {
+    String key = outputFile == null ? "log" : Digests.sha1(outputFile.getAbsolutePath());
+    return new File(workDirectory, "snapshot-state/" + key + ".properties");
+  }
+
   protected void doExecute() throws MojoExecutionException, MojoFailureException {
-    StringBuilder sb = new StringBuilder();
+    ResolvedTarget target = resolveTarget();
+    Set<Artifact> dependencies = target.getArtifacts();
+
+    /* PDE only reloads the target when it changes, so bump the sequence number whenever the bytes of a snapshot or the
+       set of locations changed, and otherwise keep the target exactly as it was */
+    SnapshotTracker snapshots = new SnapshotTracker(getSnapshotStateFile(), getChecksums());
+    Map<Artifact, File> referencedFiles = new HashMap<>();
+    for (Artifact dependency : dependencies) {
+      File pinned = pinnedSnapshots.get(dependency);
+      referencedFiles.put(dependency, pinned != null ? pinned : dependency.getFile());
+    }
+    int sequenceNumber = PdeTargetEmitter.readSequenceNumber(appendOutput ? null : outputFile);
+    try {
+      snapshots.record(referencedFiles);
+      snapshots.recordLocations(target.getLocations().values());
+      if (sequenceNumber == 0)
+        sequenceNumber = 1;
+      else if (snapshots.isChanged()) {
+        getLog().info("Snapshots or locations have changed since the last target was written");
+        sequenceNumber++;
+      }
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+    target.setSequenceNumber(sequenceNumber);
+
+    if (checkClassVersions)
+      checkClassVersions(target);
+    if (checkClassOverlaps)
+      checkClassOverlaps(target);
+
+    for (TargetEmitter emitter : getEmitters()) {
+      getLog().debug("Writing the " + emitter.getName());
+      emitter.emit(target, getLog());
+    }
+    setMarkers(dependencies);
+
+    try {
+      snapshots.save();
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Resolves the dependencies (including the {@link #extraDeps}) and determines where PDE will load each of them from
+   *
+   * @return the resolved target
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected ResolvedTarget resolveTarget() throws MojoExecutionException {
+    String hash = null;
+    if (lockFile != null) {
+      hash = getResolutionHash();
+      if (replayLockFile) {
+        ResolvedTarget replayed = replayLockFile(hash);
+        if (replayed != null)
+          return replayed;
+      }
+    }
 
     DependencyStatusSets results;
     try {
@@ -976,62 +1446,786 @@ public class BuildTarget extends AbstractMojo {
       throw new RuntimeException(ex);
     }
 
-    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
-    sb.append("<target name=\"");
-    sb.append(targetName);
-    sb.append("\" sequenceNumber=\"1\">\n");
-    sb.append("<locations>\n");
-    Set<Artifact> dependencies = results.getResolvedDependencies();
-    for (Artifact dependency : dependencies) {
-      File file = dependency.getFile();
-
-      sb.append("\t<location path=\"");
-      sb.append(file.getParentFile().getAbsolutePath());
-      sb.append("\" type=\"Directory\"/>\n");
-    }
-    if ((extraDeps != null) && (extraDeps.isEmpty() == false)) {
-      String[] deps = extraDeps.split(",");
-      Set<ArtifactCoordinate> extraCoords = new HashSet<>();
-      for (String dep : deps) {
-        String[] parts = dep.split(":");
-        DefaultArtifactCoordinate coord = new DefaultArtifactCoordinate();
-        coord.setGroupId(parts[0]);
-        coord.setArtifactId(parts[1]);
-        coord.setVersion(parts[2]);
-        if (parts.length > 3)
-          coord.setExtension(parts[3]);
-        if (parts.length > 4)
-          coord.setClassifier(parts[4]);
-        extraCoords.add(coord);
+    /* Artifacts that were marked by an earlier execution are skipped, but they still belong in the target. With a
+       classifier, the resolved set already holds every translated artifact, and the skipped ones are untranslated */
+    Set<Artifact> dependencies = new LinkedHashSet<Artifact>(results.getResolvedDependencies());
+    if (StringUtils.isEmpty(classifier) && (results.getSkippedDependencies() != null)
+      && (results.getSkippedDependencies().isEmpty() == false)) {
+
+      /* Keep the order of the candidates, so the target doesn't change just because some artifacts are new */
+      Set<Artifact> kept = new LinkedHashSet<>(dependencies);
+      kept.addAll(results.getSkippedDependencies());
+      dependencies.clear();
+      for (Artifact artifact : getCandidateArtifacts())
+        if (kept.remove(artifact))
+          dependencies.add(artifact);
+      dependencies.addAll(kept);
+    }
+    getLog().debug(results.getResolvedDependencies().size() + " artifacts are new since the last execution, "
+      + dependencies.size() + " in total");
+    Set<Artifact> extras = resolveExtraDeps();
+    dependencies.addAll(extras);
+    if (StringUtils.isNotEmpty(rootBundles))
+      dependencies = pruneUnreachable(dependencies, extras);
+    if (getEnvironment().isEmpty() == false)
+      dependencies = removeOtherPlatforms(dependencies);
+    if (lockFile != null)
+      writeLockFile(hash, dependencies);
+    results.setResolvedDependencies(dependencies);
+
+    return new ResolvedTarget(targetName, results, getLocations(dependencies));
+  }
+
+  /**
+   * Produces the target from the {@link #lockFile}, if it still applies
+   *
+   * @param hash the hash of the current resolution inputs
+   * @return the target, or null if the dependencies have to be resolved
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected ResolvedTarget replayLockFile(String hash) throws MojoExecutionException {
+    LockFile lock;
+    try {
+      lock = LockFile.read(lockFile);
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+    if (lock == null) {
+      getLog().info("No usable lock file " + lockFile + ", resolving the dependencies");
+      return null;
+    }
+    if (hash.equals(lock.getHash()) == false) {
+      getLog().info("The dependencies changed since " + lockFile + " was written, resolving the dependencies");
+      return null;
+    }
+
+    File localRepository = getLocalRepositoryDirectory();
+    Set<Artifact> artifacts = new LinkedHashSet<>();
+    for (LockFile.Entry entry : lock.getEntries()) {
+      File file = entry.getFile(localRepository);
+      if (entry.isUnchanged(file) == false) {
+        getLog().info("The locked file " + file + " is missing or changed, resolving the dependencies");
+        return null;
+      }
+      Artifact artifact = new DefaultArtifact(entry.groupId, entry.artifactId, entry.version,
+        StringUtils.isEmpty(entry.scope) ? null : entry.scope, entry.type,
+        StringUtils.isEmpty(entry.classifier) ? null : entry.classifier,
+        artifactHandlerManager.getArtifactHandler(entry.type));
+      artifact.setFile(file);
+      artifact.setResolved(true);
+      artifacts.add(artifact);
+    }
+    getLog().info("Replaying " + artifacts.size() + " artifacts from " + lockFile);
+    return new ResolvedTarget(targetName, new DependencyStatusSets(artifacts, null, null), getLocations(artifacts));
+  }
+
+  /**
+   * Records the resolved artifacts in the {@link #lockFile}
+   *
+   * @param hash the hash of the resolution inputs
+   * @param artifacts the resolved artifacts
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected void writeLockFile(String hash, Collection<Artifact> artifacts) throws MojoExecutionException {
+    File localRepository = getLocalRepositoryDirectory();
+    List<LockFile.Entry> entries = new ArrayList<>();
+    try {
+      for (Artifact artifact : artifacts) {
+        File file = artifact.getFile();
+
+        /* A replay without the artifact would produce a different target, so there must be no lock to replay */
+        if ((file == null) || ((file.isFile() == false) && (file.isDirectory() == false))) {
+          getLog().warn("Not writing " + lockFile + " since " + artifact + " isn't resolved to a file");
+          if (lockFile.exists() && (lockFile.delete() == false))
+            throw new MojoExecutionException("Unable to delete the stale lock file " + lockFile);
+          return;
+        }
+        boolean directory = file.isDirectory();
+        entries.add(new LockFile.Entry(artifact.getGroupId(), artifact.getArtifactId(), artifact.getType(),
+          artifact.getClassifier(), artifact.getVersion(), artifact.getScope(),
+          LockFile.toPath(file, localRepository), directory ? LockFile.DIRECTORY : file.length(),
+          directory ? "-" : Digests.sha1(file, getChecksums())));
+      }
+      if (new LockFile(hash, entries).write(lockFile))
+        getLog().info("Wrote " + lockFile);
+      getChecksums().save();
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  private File getLocalRepositoryDirectory() {
+    return new File(session.getLocalRepository().getBasedir());
+  }
+
+  /**
+   * Hashes everything that decides which artifacts end up in the target: the dependencies (and dependency management)
+   * of the POM, and the filter settings of the execution. The goal isn't part of it, so <code>build-target</code> and
+   * <code>build-target-lazy</code> replay each other's lock file.
+   *
+   * @return the hash
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected String getResolutionHash() throws MojoExecutionException {
+    StringBuilder sb = new StringBuilder();
+    for (Dependency dependency : getProject().getDependencies())
+      appendDependency(sb.append("dependency "), dependency);
+    DependencyManagement management = getProject().getDependencyManagement();
+    if (management != null)
+      for (Dependency dependency : management.getDependencies())
+        appendDependency(sb.append("managed "), dependency);
+    String[] settings = new String[] {String.valueOf(excludeTransitive), includeTypes, excludeTypes, includeScope,
+        excludeScope, includeClassifiers, excludeClassifiers, classifier, type, includeGroupIds, excludeGroupIds,
+        includeArtifactIds, excludeArtifactIds, extraDeps, rootBundles, os, ws, arch};
+    for (String setting : settings)
+      sb.append(StringUtils.clean(setting)).append('\n');
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return Digests.toHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  private static void appendDependency(StringBuilder sb, Dependency dependency) {
+    sb.append(dependency.getManagementKey()).append(':').append(dependency.getVersion()).append(':')
+      .append(dependency.getScope()).append(':').append(dependency.isOptional());
+    for (Exclusion exclusion : dependency.getExclusions())
+      sb.append(" -").append(exclusion.getGroupId()).append(':').append(exclusion.getArtifactId());
+    sb.append('\n');
+  }
+
+  /**
+   * Removes the artifacts that aren't reachable from the {@link #rootBundles} (or the extra dependencies)
+   *
+   * @param artifacts the artifacts
+   * @param extras the extra dependencies, which are always kept
+   * @return the reachable artifacts, in the same order
+   * @throws MojoExecutionException if no root matches, or the manifests can't be read
+   */
+  protected Set<Artifact> pruneUnreachable(Set<Artifact> artifacts, Collection<Artifact> extras)
+    throws MojoExecutionException {
+
+    Map<Artifact, Attributes> manifests = readManifests(artifacts);
+    List<String> patterns = new ArrayList<>();
+    for (String pattern : StringUtils.split(rootBundles, ","))
+      if (pattern.trim().isEmpty() == false)
+        patterns.add(pattern.trim());
+    Set<Artifact> roots = new LinkedHashSet<>(extras);
+    for (Map.Entry<Artifact, Attributes> entry : manifests.entrySet()) {
+      Artifact artifact = entry.getKey();
+      String bsn = BundleManifests.getSymbolicName(entry.getValue());
+      for (String pattern : patterns) {
+        if ((bsn != null && matches(pattern, bsn))
+          || matches(pattern, artifact.getGroupId() + ":" + artifact.getArtifactId())) {
+          roots.add(artifact);
+          break;
+        }
+      }
+    }
+    if (roots.size() == extras.size())
+      throw new MojoExecutionException("None of the dependencies matches the rootBundles " + rootBundles);
+
+    ReachabilityPruner pruner = new ReachabilityPruner(manifests);
+    Set<Artifact> reachable = pruner.getClosure(roots);
+    getLog().info("Keeping " + reachable.size() + " of " + artifacts.size() + " artifacts that are reachable from "
+      + (roots.size() - extras.size()) + " root bundles");
+    for (String requirement : pruner.getUnresolved())
+      getLog().debug("No artifact provides the " + requirement);
+    for (String range : pruner.getInvalidRanges())
+      getLog().warn(range + ", so it matches every version");
+    return reachable;
+  }
+
+  /**
+   * Removes the fragments that can't run in the {@link #getEnvironment() environment} of the target, according to
+   * their Eclipse-PlatformFilter or Bundle-NativeCode. Other bundles are always kept, since dropping them could leave
+   * requirements unsatisfied.
+   *
+   * @param artifacts the artifacts
+   * @return the artifacts that are kept, in the same order
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Set<Artifact> removeOtherPlatforms(Set<Artifact> artifacts) throws MojoExecutionException {
+    TargetEnvironment environment = getEnvironment();
+    Set<Artifact> kept = new LinkedHashSet<>();
+    for (Map.Entry<Artifact, Attributes> entry : readManifests(artifacts).entrySet()) {
+      Attributes manifest = entry.getValue();
+      boolean matches;
+      try {
+        matches = (manifest == null) || (manifest.getValue(ReachabilityPruner.FRAGMENT_HOST) == null)
+          || environment.matches(manifest);
+      }
+      catch (IllegalArgumentException ex) {
+        throw new MojoExecutionException("Unable to read the platform of " + entry.getKey() + ": " + ex.getMessage(),
+          ex);
+      }
+      if (matches)
+        kept.add(entry.getKey());
+      else
+        getLog().debug("Removing " + entry.getKey() + ", it is for another platform");
+    }
+    getLog().info("Removed " + (artifacts.size() - kept.size()) + " fragments for platforms other than " + environment);
+    return kept;
+  }
+
+  /**
+   * Reads the manifests in parallel, since this is where the time goes with thousands of bundles
+   *
+   * @param artifacts the artifacts
+   * @return the main attributes of the manifest of each artifact (null if it has none), in the same order
+   * @throws MojoExecutionException in case of an error.
+   */
+  private Map<Artifact, Attributes> readManifests(Collection<Artifact> artifacts) throws MojoExecutionException {
+    final List<Artifact> list = new ArrayList<>(artifacts);
+    List<Callable<Attributes>> tasks = new ArrayList<>();
+    for (final Artifact artifact : list) {
+      tasks.add(new Callable<Attributes>() {
+        @Override
+        public Attributes call() throws IOException {
+          File file = artifact.getFile();
+          return (file == null) || (file.exists() == false) ? null : BundleManifests.read(file);
+        }
+      });
+    }
+    List<Attributes> attributes = ParallelTasks.run(ParallelTasks.getThreadCount(threads), tasks);
+    Map<Artifact, Attributes> manifests = new LinkedHashMap<>();
+    for (int i = 0; i < list.size(); i++)
+      manifests.put(list.get(i), attributes.get(i));
+    return manifests;
+  }
+
+  /**
+   * @return the os/ws/arch the target is built for
+   */
+  protected TargetEnvironment getEnvironment() {
+    return new TargetEnvironment(os, ws, arch);
+  }
+
+  private static boolean matches(String pattern, String value) {
+    if (pattern.endsWith("*"))
+      return value.startsWith(pattern.substring(0, pattern.length() - 1));
+    return value.equals(pattern);
+  }
+
+  /**
+   * Checks that no class of the target is more recent than the {@link #maxJavaVersion}, or the
+   * Bundle-RequiredExecutionEnvironment of its bundle. The jars are scanned in parallel, and the result for each jar
+   * is cached until it changes.
+   *
+   * @param target the resolved target
+   * @throws MojoExecutionException if a jar can't be read
+   * @throws MojoFailureException if a class is too recent and {@link #failOnClassVersion} is set
+   */
+  protected void checkClassVersions(ResolvedTarget target) throws MojoExecutionException, MojoFailureException {
+    final FileStampCache cache = new FileStampCache(new File(workDirectory, "classversions.properties"));
+    final List<Artifact> artifacts = new ArrayList<>();
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (Artifact artifact : target.getArtifacts()) {
+      final File file = artifact.getFile();
+      if ((file == null) || (file.exists() == false))
+        continue;
+      artifacts.add(artifact);
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          /* A directory's timestamp doesn't change with its contents, so those are always scanned */
+          String cached = file.isFile() ? cache.get(file) : null;
+          if (cached != null)
+            return Integer.valueOf(cached);
+          int major = ClassVersions.getMaxMajorVersion(file);
+          if (file.isFile())
+            cache.put(file, String.valueOf(major));
+          return major;
+        }
+      });
+    }
+    List<Integer> versions = ParallelTasks.run(ParallelTasks.getThreadCount(threads), tasks);
+    try {
+      cache.save();
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+
+    int ceiling = maxJavaVersion > 0 ? ClassVersions.toMajorVersion(maxJavaVersion) : 0;
+    int problems = 0;
+    for (int i = 0; i < artifacts.size(); i++) {
+      Artifact artifact = artifacts.get(i);
+      int major = versions.get(i);
+      if (major == 0)
+        continue;
+      if ((ceiling > 0) && (major > ceiling)) {
+        getLog().warn(artifact + " contains classes for " + ClassVersions.describe(major) + " (class file version "
+          + major + "), but the runtime is Java " + maxJavaVersion);
+        problems++;
+        continue;
+      }
+      Attributes manifest = target.getManifest(artifact);
+      String bree = manifest == null ? null : manifest.getValue("Bundle-RequiredExecutionEnvironment");
+      int required = ClassVersions.getMaxMajorVersion(bree);
+      if ((required > 0) && (major > required)) {
+        getLog().warn(artifact + " contains classes for " + ClassVersions.describe(major) + " (class file version "
+          + major + "), but its Bundle-RequiredExecutionEnvironment is " + bree);
+        problems++;
+      }
+    }
+    if ((problems > 0) && failOnClassVersion)
+      throw new MojoFailureException(problems + " artifacts contain classes that are too recent");
+  }
+
+  /**
+   * Reports the split packages and duplicate classes of the target
+   *
+   * @param target the resolved target
+   * @throws MojoExecutionException if a jar can't be read
+   * @throws MojoFailureException if there are duplicate classes and {@link #failOnDuplicateClasses} is set
+   */
+  protected void checkClassOverlaps(ResolvedTarget target) throws MojoExecutionException, MojoFailureException {
+    List<Artifact> artifacts = new ArrayList<>();
+    List<File> files = new ArrayList<>();
+    for (Artifact artifact : target.getArtifacts()) {
+      File file = artifact.getFile();
+      if ((file != null) && file.exists()) {
+        artifacts.add(artifact);
+        files.add(file);
+      }
+    }
+
+    /* A fragment shares the class loader of its host, so they are treated as one owner */
+    Map<String, Integer> bundles = new HashMap<>();
+    for (int i = 0; i < artifacts.size(); i++) {
+      String bsn = BundleManifests.getSymbolicName(target.getManifest(artifacts.get(i)));
+      if ((bsn != null) && (bundles.containsKey(bsn) == false))
+        bundles.put(bsn, i);
+    }
+    int[] owners = new int[artifacts.size()];
+    for (int i = 0; i < artifacts.size(); i++) {
+      owners[i] = i;
+      Attributes manifest = target.getManifest(artifacts.get(i));
+      List<OsgiHeaders.Clause> host =
+        OsgiHeaders.parse(manifest == null ? null : manifest.getValue(ReachabilityPruner.FRAGMENT_HOST));
+      if ((host.isEmpty() == false) && bundles.containsKey(host.get(0).getPaths().get(0)))
+        owners[i] = bundles.get(host.get(0).getPaths().get(0));
+    }
+
+    ClassOverlaps overlaps = ClassOverlaps.scan(files, owners, ParallelTasks.getThreadCount(threads));
+    getLog().info("Scanned " + overlaps.getClassCount() + " classes: " + overlaps.getSplitPackages().size()
+      + " split packages and " + overlaps.getDuplicateClasses().size() + " duplicate classes");
+    for (Map.Entry<String, Set<Integer>> entry : overlaps.getSplitPackages().entrySet())
+      getLog().warn("Split package " + entry.getKey() + " in " + describeOwners(artifacts, entry.getValue()));
+    for (Map.Entry<Set<Integer>, List<String>> entry : ClassOverlaps
+      .groupByOwners(overlaps.getDuplicateClasses()).entrySet()) {
+      List<String> names = entry.getValue();
+      getLog().warn(names.size() + " duplicate classes (ie. " + names.get(0) + ") in "
+        + describeOwners(artifacts, entry.getKey()));
+      for (String name : names)
+        getLog().debug("  " + name);
+    }
+    if (failOnDuplicateClasses && (overlaps.getDuplicateClasses().isEmpty() == false))
+      throw new MojoFailureException(overlaps.getDuplicateClasses().size() + " classes are in more than one artifact");
+  }
+
+  private static String describeOwners(List<Artifact> artifacts, Set<Integer> owners) {
+    StringBuilder sb = new StringBuilder();
+    for (Integer owner : owners) {
+      if (sb.length() > 0)
+        sb.append(", ");
+      sb.append(artifacts.get(owner).getId());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the cache of the checksums of artifact files
+   */
+  protected FileStampCache getChecksums() {
+    if (checksums == null)
+      checksums = new FileStampCache(new File(workDirectory, "checksums.properties"));
+    return checksums;
+  }
+
+  /**
+   * @return the emitters that write the outputs of the execution. The PDE target is always written (to the log if
+   *         there is no {@link #outputFile}), the others only if their file is configured.
+   */
+  protected List<TargetEmitter> getEmitters() {
+    List<TargetEmitter> emitters = new ArrayList<>();
+    if (baseTargetFile != null) {
+      TargetLayers layers = new TargetLayers(baseIncludes, baseExcludes);
+      emitters.add(new BaseTargetEmitter(baseTargetFile, baseTargetName, layers, getEnvironment(), outputFile));
+      emitters.add(new PdeTargetEmitter(outputFile, appendOutput, layers, baseTargetFile, getEnvironment()));
+    }
+    else
+      emitters.add(new PdeTargetEmitter(outputFile, appendOutput, null, null, getEnvironment()));
+    if (bndrunFile != null)
+      emitters.add(new BndrunEmitter(bndrunFile));
+    if (featuresFile != null)
+      emitters.add(new KarafFeaturesEmitter(featuresFile, featureName, featureVersion));
+    if (indexFile != null)
+      emitters.add(new RepositoryIndexEmitter(indexFile, new FileStampCache(
+        new File(workDirectory, "index-cache/" + Digests.sha1(indexFile.getAbsolutePath()) + ".properties")), threads));
+    if (writePackageIndex && (packageIndexFile != null))
+      emitters.add(new PackageIndexEmitter(packageIndexFile,
+        new FileStampCache(new File(workDirectory, "packages.properties")), threads));
+    return emitters;
+  }
+
+  /**
+   * Resolves the artifacts listed in {@link #extraDeps}
+   *
+   * @return the resolved artifacts
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Set<Artifact> resolveExtraDeps() throws MojoExecutionException {
+    if ((extraDeps == null) || (extraDeps.isEmpty() == true))
+      return Collections.emptySet();
+    String[] deps = extraDeps.split(",");
+    Set<ArtifactCoordinate> extraCoords = new LinkedHashSet<>();
+    for (String dep : deps) {
+      String[] parts = dep.split(":");
+      DefaultArtifactCoordinate coord = new DefaultArtifactCoordinate();
+      coord.setGroupId(parts[0]);
+      coord.setArtifactId(parts[1]);
+      coord.setVersion(parts[2]);
+      if (parts.length > 3)
+        coord.setExtension(parts[3]);
+      if (parts.length > 4)
+        coord.setClassifier(parts[4]);
+      extraCoords.add(coord);
+    }
+
+    /* Releases never change once they are in the local repository, so only ask the resolver (and with it, the remote
+       repositories) for the ones that are missing and for snapshots */
+    ProjectBuildingRequest buildingRequest = newResolveArtifactProjectBuildingRequest();
+    File localRepository = repositoryManager.getLocalRepositoryBasedir(buildingRequest);
+    Set<Artifact> artifacts = new LinkedHashSet<>();
+    for (ArtifactCoordinate coord : extraCoords) {
+      Artifact local = findLocalArtifact(buildingRequest, localRepository, coord);
+      if (local != null) {
+        getLog().debug("Using " + local.getFile() + " from the local repository");
+        artifacts.add(local);
       }
-      Set<Artifact> resolved = resolve(extraCoords, true);
-      for (Artifact dependency : resolved) {
-        File file = dependency.getFile();
+      else
+        artifacts.addAll(resolve(Collections.singleton(coord), true));
+    }
+    return artifacts;
+  }
+
+  /**
+   * @param buildingRequest the building request
+   * @param localRepository the base directory of the local repository
+   * @param coord the coordinate
+   * @return the artifact, if it is a release whose file is already in the local repository, or null
+   */
+  protected Artifact findLocalArtifact(ProjectBuildingRequest buildingRequest, File localRepository,
+    ArtifactCoordinate coord) {
+    if (StringUtils.isEmpty(coord.getVersion()) || (coord.getVersion().indexOf('[') != -1)
+      || (coord.getVersion().indexOf('(') != -1) || ArtifactUtils.isSnapshot(coord.getVersion()))
+      return null;
+    File file = new File(localRepository, repositoryManager.getPathForLocalArtifact(buildingRequest, coord));
+    if (file.isFile() == false)
+      return null;
+    String type = StringUtils.isEmpty(coord.getExtension()) ? "jar" : coord.getExtension();
+    Artifact artifact = new DefaultArtifact(coord.getGroupId(), coord.getArtifactId(), coord.getVersion(), null, type,
+      coord.getClassifier(), artifactHandlerManager.getArtifactHandler(type));
+    artifact.setFile(file);
+    artifact.setResolved(true);
+    return artifact;
+  }
 
-        sb.append("\t<location path=\"");
-        sb.append(file.getParentFile().getAbsolutePath());
-        sb.append("\" type=\"Directory\"/>\n");
+  /**
+   * Determines the directory that PDE should load each artifact from. By default, that's the directory of the artifact
+   * in the local repository.
+   *
+   * @param artifacts the artifacts
+   * @return the location directory for each artifact, in the same order as the artifacts
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Map<Artifact, File> getLocations(Collection<Artifact> artifacts) throws MojoExecutionException {
+    Map<Artifact, File> reactorOutputs =
+      useReactorOutput ? getReactorOutputDirectories(artifacts) : Collections.<Artifact, File> emptyMap();
+    List<Artifact> packaged = new ArrayList<>();
+    for (Artifact artifact : artifacts) {
+      if (reactorOutputs.containsKey(artifact) == false)
+        packaged.add(artifact);
+    }
+    Map<Artifact, File> extracted =
+      extractDirectoryBundles ? extractDirectoryBundles(packaged) : Collections.<Artifact, File> emptyMap();
+    Map<Artifact, File> locations = new LinkedHashMap<>();
+    for (Artifact artifact : artifacts) {
+      File location = reactorOutputs.get(artifact);
+      if (location == null)
+        location = extracted.get(artifact);
+      if ((location == null) && pinSnapshots && artifact.isSnapshot() && artifact.getFile().isFile())
+        location = pinSnapshot(artifact);
+      if (location == null)
+        location = artifact.getFile().getParentFile();
+      locations.put(artifact, location);
+    }
+    return locations;
+  }
+
+  /**
+   * Copies a snapshot into the {@link #workDirectory}, in a directory named after the checksum of its bytes. Locally
+   * installed snapshots keep the same (non timestamped) version, so only the checksum tells the builds apart. The copy
+   * is named after the resolved version, which is timestamped for a deployed snapshot. The copies of earlier bytes of
+   * the same snapshot are removed.
+   *
+   * @param artifact the snapshot artifact
+   * @return the directory containing the pinned copy
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected File pinSnapshot(Artifact artifact) throws MojoExecutionException {
+    File file = artifact.getFile();
+    File parent = new File(workDirectory, "snapshots/" + artifact.getGroupId().replace('.', '/') + "/"
+      + artifact.getArtifactId() + "/" + artifact.getBaseVersion());
+    String name = file.getName();
+    int offset = name.lastIndexOf('.');
+    String suffix = (StringUtils.isNotEmpty(artifact.getClassifier()) ? "-" + artifact.getClassifier() : "")
+      + (offset == -1 ? "" : name.substring(offset));
+    String pinnedName = artifact.getArtifactId() + "-" + artifact.getVersion() + suffix;
+
+    /* Any version of the same snapshot, either installed (1.0-SNAPSHOT) or deployed (1.0-20200101.101010-1) */
+    String base = artifact.getBaseVersion();
+    Pattern versions = Pattern.compile(Pattern.quote(artifact.getArtifactId() + "-"
+      + base.substring(0, base.length() - Artifact.SNAPSHOT_VERSION.length()))
+      + "(" + Artifact.SNAPSHOT_VERSION + "|[0-9]{8}\\.[0-9]{6}-[0-9]+)" + Pattern.quote(suffix));
+    File directory;
+    File pinned;
+    try {
+      directory = new File(parent, Digests.sha1(file, getChecksums()));
+      pinned = new File(directory, pinnedName);
+      if (overWriteSnapshots || (pinned.isFile() == false))
+        copyFile(file, pinned);
+
+      /* Each directory holds the copies with the same bytes, so the other directories hold superseded copies */
+      File[] others = parent.listFiles();
+      for (File other : others == null ? new File[0] : others) {
+        if ((other.isDirectory() == false) || other.equals(directory))
+          continue;
+        File[] copies = other.listFiles();
+        for (File superseded : copies == null ? new File[0] : copies)
+          if (versions.matcher(superseded.getName()).matches() && (superseded.delete() == false))
+            getLog().warn("Unable to remove the superseded copy " + superseded);
+        String[] remaining = other.list();
+        if ((remaining != null) && (remaining.length == 0))
+          other.delete();
       }
     }
-    sb.append("</locations>\n");
-    sb.append("</target>\n");
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+    pinnedSnapshots.put(artifact, pinned);
+    return directory;
+  }
 
-    String output = sb.toString();
+  /**
+   * Finds the artifacts that are built by a module of the current reactor. PDE loads the children of a Directory
+   * location as bundles, so the location of a module is a directory in the {@link #workDirectory} that holds a link
+   * (<code>&lt;symbolic name&gt;_&lt;version&gt;</code>) to the build output directory of the module.
+   *
+   * @param artifacts the artifacts
+   * @return the location directory, for each artifact built by the reactor
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Map<Artifact, File> getReactorOutputDirectories(Collection<Artifact> artifacts)
+    throws MojoExecutionException {
+    Map<String, MavenProject> modules = new HashMap<>();
+    if (reactorProjects != null) {
+      for (MavenProject module : reactorProjects) {
+        if ("pom".equals(module.getPackaging()) == false)
+          modules.put(module.getGroupId() + ":" + module.getArtifactId() + ":" + module.getVersion(), module);
+      }
+    }
+    Map<Artifact, File> outputs = new HashMap<>();
+    if (modules.isEmpty())
+      return outputs;
+    for (Artifact artifact : artifacts) {
+      if (StringUtils.isNotEmpty(artifact.getClassifier()))
+        continue;
+      MavenProject module =
+        modules.get(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getBaseVersion());
+      if (module == null)
+        continue;
+      File output = new File(module.getBuild().getOutputDirectory());
+      if (output.isDirectory() == false) {
+        getLog().warn("The module " + module.getArtifactId() + " hasn't been compiled yet, so the target uses "
+          + artifact.getFile() + " instead");
+        continue;
+      }
+      Attributes manifest;
+      try {
+        manifest = BundleManifests.read(output);
+      }
+      catch (IOException ex) {
+        throw new MojoExecutionException("Unable to read the manifest of " + output, ex);
+      }
+      String name = BundleManifests.getSymbolicName(manifest);
+      if (name == null) {
+        getLog().warn("There is no bundle " + JarFile.MANIFEST_NAME + " in " + output + ", so the target uses "
+          + artifact.getFile() + " instead. The manifest needs to be generated into the output directory.");
+        continue;
+      }
+      File location = new File(workDirectory, "reactor/" + module.getGroupId() + "/" + module.getArtifactId());
+      linkReactorOutput(location, name + "_" + BundleManifests.getVersion(manifest), output);
+      outputs.put(artifact, location);
+    }
+    return outputs;
+  }
 
+  /**
+   * Makes the build output directory of a module the only bundle in its location. The output is linked, so the
+   * location follows every compilation, and only copied if the file system doesn't support links.
+   *
+   * @param location the location directory
+   * @param bundleName the directory name of the bundle in the location
+   * @param output the build output directory
+   * @throws MojoExecutionException in case of an error.
+   */
+  private void linkReactorOutput(File location, String bundleName, File output) throws MojoExecutionException {
+    Path link = new File(location, bundleName).toPath();
+    Path target = output.getAbsoluteFile().toPath();
     try {
-      if (outputFile == null) {
-        DependencyUtil.log(output, getLog());
+      File[] existing = location.listFiles();
+      for (File file : existing == null ? new File[0] : existing) {
+        Path path = file.toPath();
+        if (path.equals(link) && Files.isSymbolicLink(path) && Files.readSymbolicLink(path).equals(target))
+          continue;
+        if (Files.isSymbolicLink(path) || file.isFile())
+          Files.delete(path);
+        else
+          FileUtils.deleteDirectory(file);
+      }
+      if (Files.exists(link, LinkOption.NOFOLLOW_LINKS))
+        return;
+      Files.createDirectories(location.toPath());
+      try {
+        Files.createSymbolicLink(link, target);
       }
+      catch (UnsupportedOperationException | IOException ex) {
+        getLog().warn("Unable to link " + link + " to " + output + " (" + ex.getMessage()
+          + "), copying it instead. PDE only sees changes after the next execution.");
+        FileUtils.copyDirectoryStructure(output, link.toFile());
+      }
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Finds the bundles that need to be installed as a directory (<code>Eclipse-BundleShape: dir</code>) and extracts
+   * them in parallel into the {@link #bundleCacheDirectory}. The bundles are stored under the hash of their jar, and the
+   * hashes are cached by the size and modification time of the jar, so an unchanged jar is neither hashed nor extracted
+   * again. Extracted bundles that no cached jar has anymore (ie. older builds of a snapshot) are removed.
+   *
+   * @param artifacts the artifacts
+   * @return the directory containing the extracted bundle, for each artifact that is a directory shaped bundle
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected Map<Artifact, File> extractDirectoryBundles(Collection<Artifact> artifacts)
+    throws MojoExecutionException {
+    final FileStampCache shapes = new FileStampCache(new File(bundleCacheDirectory, "shapes.properties"));
+    List<Artifact> candidates = new ArrayList<>();
+    List<Callable<File>> tasks = new ArrayList<>();
+    for (final Artifact artifact : artifacts) {
+      if ((artifact.getFile() == null) || (artifact.getFile().isFile() == false))
+        continue;
+      candidates.add(artifact);
+      tasks.add(new Callable<File>() {
+        @Override
+        public File call() throws Exception {
+          return extractDirectoryBundle(artifact, shapes);
+        }
+      });
+    }
+    List<File> extracted = ParallelTasks.run(ParallelTasks.getThreadCount(threads), tasks);
+    try {
+      shapes.removeMissing();
+      shapes.save();
+      removeUnusedBundles(shapes);
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+
+    Map<Artifact, File> locations = new HashMap<>();
+    for (int i = 0; i < candidates.size(); i++) {
+      if (extracted.get(i) != null)
+        locations.put(candidates.get(i), extracted.get(i));
+    }
+    return locations;
+  }
+
+  /**
+   * Removes the extracted bundles of the {@link #bundleCacheDirectory} that no jar in the cache resolves to anymore.
+   * Other executions that share the directory keep theirs, since their jars are in the cache too.
+   *
+   * @param shapes the cache of the bundle shapes
+   * @throws IOException if a directory can't be removed
+   */
+  private void removeUnusedBundles(FileStampCache shapes) throws IOException {
+    Set<String> used = new HashSet<>();
+    for (String shape : shapes.getValues()) {
+      int offset = shape.indexOf(' ');
+      if (offset != -1)
+        used.add(shape.substring(0, offset));
+    }
+    File[] directories = bundleCacheDirectory.listFiles();
+    if (directories == null)
+      return;
+    for (File directory : directories) {
+      if (directory.isDirectory() && SHA1.matcher(directory.getName()).matches()
+        && (used.contains(directory.getName()) == false)) {
+        getLog().debug("Removing the unused bundle directory " + directory);
+        FileUtils.deleteDirectory(directory);
+      }
+    }
+  }
+
+  File extractDirectoryBundle(Artifact artifact, FileStampCache shapes) throws IOException, MojoExecutionException {
+    File file = artifact.getFile();
+
+    /* The cache entry is either - (not directory shaped) or the hash and the directory name of the bundle */
+    String shape = shapes.get(file);
+    if (shape == null) {
+      Attributes attributes = BundleManifests.read(file);
+      String bundleShape = attributes == null ? null : attributes.getValue("Eclipse-BundleShape");
+      if ((bundleShape == null) || ("dir".equals(bundleShape.trim()) == false))
+        shape = "-";
       else {
-        DependencyUtil.write(output, outputFile, appendOutput, getLog());
+        String name = BundleManifests.getSymbolicName(attributes);
+        if (name == null)
+          name = artifact.getArtifactId();
+        shape = Digests.sha1(file) + " " + name + "_" + BundleManifests.getVersion(attributes);
       }
+      shapes.put(file, shape);
     }
-    catch (IOException e) {
-      throw new MojoExecutionException(e.getMessage(), e);
+    if ("-".equals(shape))
+      return null;
+
+    int offset = shape.indexOf(' ');
+    String hash = shape.substring(0, offset);
+    File location = new File(bundleCacheDirectory, hash);
+    if (location.isDirectory() == false) {
+
+      /* Extract to a private directory first, so that a partial extraction is never used */
+      File temp = new File(bundleCacheDirectory, hash + "." + UUID.randomUUID() + ".tmp");
+      unpack(artifact, artifact.getType(), new File(temp, shape.substring(offset + 1)), null, null, null);
+      if (temp.renameTo(location) == false) {
+        FileUtils.deleteDirectory(temp);
+        if (location.isDirectory() == false)
+          throw new MojoExecutionException("Unable to move " + temp + " to " + location);
+      }
     }
+    return location;
   }
 
-  protected ArtifactsFilter getMarkedArtifactFilter() {
-    return new ResolveFileFilter(new SourcesFileMarkerHandler(this.markersDirectory));
+  protected ArtifactsFilter getMarkedArtifactFilter() throws MojoExecutionException {
+    return getMarkerStore().newUnmarkedFilter();
   }
 }
@@ -0,0 +1,327 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.plugins.dependency.utils.DependencyUtil;
+import org.apache.maven.shared.artifact.filter.resolve.ScopeFilter;
+import org.apache.maven.shared.artifact.resolve.ArtifactResult;
+import org.apache.maven.shared.dependencies.resolve.DependencyResolverException;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Goal builds an PDE target file from dependencies without asking Maven to resolve the project dependencies first. The
+ * dependencies are resolved by the goal itself, and only for the scopes that <code>includeScope</code> and
+ * <code>excludeScope</code> can keep. Nothing is resolved when the execution is skipped or when the outputs were
+ * written by an execution with the same dependencies and settings, and still exist.
+ */
+@Mojo(name = "build-target-lazy", requiresDependencyResolution = ResolutionScope.NONE,
+  defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class BuildTargetLazy extends BuildTarget {
+
+  private static final String[] ALL_SCOPES = new String[] {Artifact.SCOPE_COMPILE, Artifact.SCOPE_PROVIDED,
+      Artifact.SCOPE_RUNTIME, Artifact.SCOPE_SYSTEM, Artifact.SCOPE_TEST};
+
+  private Set<Artifact>         candidateArtifacts;
+
+  @Override
+  protected void doExecute() throws MojoExecutionException, MojoFailureException {
+    String hash = getExecutionHash();
+    if (isUpToDate(hash)) {
+      getLog().info("Target " + outputFile + " is up to date");
+      return;
+    }
+    super.doExecute();
+
+    /* A snapshot or a range anywhere in the resolved graph may resolve differently next time */
+    writeExecutionHash(hasVolatileCandidates() ? null : hash);
+  }
+
+  /**
+   * The target is up to date if the last execution that wrote it had the same {@link #getExecutionHash() hash}, every
+   * configured output still exists, and none of the direct dependencies, {@link #extraDeps} or locked artifacts is a
+   * snapshot or a version range that may resolve differently since.
+   *
+   * @param hash the hash of the current execution
+   * @return true if the outputs can be left as they are.
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected boolean isUpToDate(String hash) throws MojoExecutionException {
+    if ((outputFile == null) || (appendOutput == true))
+      return false;
+    for (File file : getOutputFiles()) {
+      if (file.isFile() == false) {
+        getLog().debug("The output " + file + " is missing");
+        return false;
+      }
+    }
+    for (Dependency dependency : getProject().getDependencies()) {
+      if (isVolatile(dependency.getVersion())) {
+        getLog().debug("The dependency " + dependency.getManagementKey() + " has the volatile version "
+          + dependency.getVersion());
+        return false;
+      }
+    }
+    if (StringUtils.isNotEmpty(extraDeps)) {
+      for (String dep : extraDeps.split(",")) {
+        String[] parts = dep.split(":");
+        if ((parts.length > 2) && isVolatile(parts[2])) {
+          getLog().debug("The extra dependency " + dep.trim() + " has a volatile version");
+          return false;
+        }
+      }
+    }
+    if (lockFile != null) {
+      LockFile lock;
+      try {
+        lock = LockFile.read(lockFile);
+      }
+      catch (IOException ex) {
+        throw new MojoExecutionException(ex.getMessage(), ex);
+      }
+      if (lock == null)
+        return false;
+      for (LockFile.Entry entry : lock.getEntries()) {
+        if (isVolatile(entry.version)) {
+          getLog().debug("The locked artifact " + entry.groupId + ":" + entry.artifactId + " has the volatile version "
+            + entry.version);
+          return false;
+        }
+      }
+    }
+    return hash.equals(readExecutionHashes().getProperty(outputFile.getAbsolutePath()));
+  }
+
+  /**
+   * @param version the version of a dependency
+   * @return true if the version may resolve to different artifacts over time (a snapshot, either as is or with the
+   *         timestamp it resolved to, or a version range)
+   */
+  static boolean isVolatile(String version) {
+    if (version == null)
+      return false;
+    version = version.trim();
+    return version.endsWith(Artifact.SNAPSHOT_VERSION) || Artifact.VERSION_FILE_PATTERN.matcher(version).matches()
+      || version.startsWith("[") || version.startsWith("(");
+  }
+
+  /**
+   * @return true if any of the artifacts that this execution resolved has a {@link #isVolatile(String) volatile}
+   *         version. A replayed lock file resolves nothing, and is checked by {@link #isUpToDate(String)} instead.
+   */
+  protected boolean hasVolatileCandidates() {
+    if (candidateArtifacts == null)
+      return false;
+    for (Artifact artifact : candidateArtifacts) {
+      if (isVolatile(artifact.getVersion()))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the output files of the execution
+   */
+  protected List<File> getOutputFiles() {
+    List<File> files = new ArrayList<>();
+    for (File file : new File[] {outputFile, baseTargetFile, bndrunFile, featuresFile, indexFile, lockFile})
+      if (file != null)
+        files.add(file);
+    if (writePackageIndex && (packageIndexFile != null))
+      files.add(packageIndexFile);
+    return files;
+  }
+
+  /**
+   * Hashes the {@link #getResolutionHash() resolution inputs} along with every setting that changes the outputs
+   *
+   * @return the hash
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected String getExecutionHash() throws MojoExecutionException {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getResolutionHash()).append('\n');
+    Object[] settings = new Object[] {targetName, outputFile, bndrunFile, featuresFile, featureName, featureVersion,
+        indexFile, packageIndexFile, writePackageIndex, baseTargetFile, baseTargetName, baseIncludes, baseExcludes,
+        extractDirectoryBundles, bundleCacheDirectory, pinSnapshots, useReactorOutput, lockFile, replayLockFile,
+        checkClassVersions, maxJavaVersion, failOnClassVersion, checkClassOverlaps, failOnDuplicateClasses};
+    for (Object setting : settings)
+      sb.append(setting == null ? "" : setting).append('\n');
+    return Digests.sha1(sb.toString());
+  }
+
+  private File getExecutionHashFile() {
+    return new File(workDirectory, "executions.properties");
+  }
+
+  private Properties readExecutionHashes() {
+    Properties hashes = new Properties();
+    File file = getExecutionHashFile();
+    if (file.isFile()) {
+      try (InputStream stream = new FileInputStream(file)) {
+        hashes.load(stream);
+      }
+      catch (IOException | IllegalArgumentException ex) {
+        hashes.clear();
+      }
+    }
+    return hashes;
+  }
+
+  /**
+   * Records the hash of the execution that wrote the outputs
+   *
+   * @param hash the hash of the execution, or null if the outputs must be written again by the next execution
+   * @throws MojoExecutionException in case of an error.
+   */
+  protected void writeExecutionHash(String hash) throws MojoExecutionException {
+    if ((outputFile == null) || appendOutput)
+      return;
+    Properties hashes = readExecutionHashes();
+    if (hash == null)
+      hashes.remove(outputFile.getAbsolutePath());
+    else
+      hashes.setProperty(outputFile.getAbsolutePath(), hash);
+    File file = getExecutionHashFile();
+    try {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+        throw new IOException("Unable to create " + parent);
+      try (OutputStream stream = new FileOutputStream(file)) {
+        hashes.store(stream, null);
+      }
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  @Override
+  protected Set<Artifact> getCandidateArtifacts() throws MojoExecutionException {
+    if (candidateArtifacts == null) {
+      Collection<String> scopes = getKeptScopes(DependencyUtil.cleanToBeTokenizedString(this.includeScope),
+        DependencyUtil.cleanToBeTokenizedString(this.excludeScope));
+      Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+      if (scopes.isEmpty() == false) {
+        getLog().debug("Resolving dependencies in the scopes " + scopes);
+
+        /* Dependencies without an explicit scope are compile dependencies, but the resolver only matches them as such
+           if the scope is actually set */
+        List<Dependency> dependencies = new ArrayList<>();
+        for (Dependency dependency : getProject().getDependencies()) {
+          if (StringUtils.isEmpty(dependency.getScope())) {
+            dependency = dependency.clone();
+            dependency.setScope(Artifact.SCOPE_COMPILE);
+          }
+          dependencies.add(dependency);
+        }
+        DependencyManagement management = getProject().getDependencyManagement();
+
+        try {
+          for (ArtifactResult result : getDependencyResolver().resolveDependencies(
+            newResolveArtifactProjectBuildingRequest(), dependencies,
+            management == null ? null : management.getDependencies(), ScopeFilter.including(scopes))) {
+            artifacts.add(result.getArtifact());
+          }
+        }
+        catch (DependencyResolverException ex) {
+          throw new MojoExecutionException(ex.getMessage(), ex);
+        }
+      }
+      candidateArtifacts = artifacts;
+    }
+    return candidateArtifacts;
+  }
+
+  @Override
+  protected Set<Artifact> getDirectDependencyArtifacts() throws MojoExecutionException {
+    Set<String> keys = new HashSet<>();
+    for (Dependency dependency : getProject().getDependencies())
+      keys.add(dependency.getGroupId() + ":" + dependency.getArtifactId() + ":"
+        + StringUtils.clean(dependency.getClassifier()));
+    Set<Artifact> direct = new LinkedHashSet<Artifact>();
+    for (Artifact artifact : getCandidateArtifacts()) {
+      if (keys.contains(
+        artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + StringUtils.clean(artifact.getClassifier())))
+        direct.add(artifact);
+    }
+    return direct;
+  }
+
+  /**
+   * The candidate artifacts were resolved with only the kept scopes, and don't carry a scope of their own.
+   */
+  @Override
+  protected boolean isScopeFilterRequired() {
+    return false;
+  }
+
+  /**
+   * Calculates the Maven scopes that can survive the scope filtering, using the same rules as the scope filter that
+   * {@link BuildTarget} applies after resolution.
+   *
+   * @param includeScope the scope to include (or empty)
+   * @param excludeScope the scope to exclude (or empty)
+   * @return the scopes that need to be resolved
+   * @throws MojoExecutionException if either scope is invalid
+   */
+  static Collection<String> getKeptScopes(String includeScope, String excludeScope) throws MojoExecutionException {
+    Set<String> scopes = new LinkedHashSet<>();
+    if (StringUtils.isNotEmpty(includeScope))
+      scopes.addAll(expandScope(includeScope, "includeScope"));
+    else
+      for (String scope : ALL_SCOPES)
+        scopes.add(scope);
+    if (StringUtils.isNotEmpty(excludeScope)) {
+      if (Artifact.SCOPE_TEST.equals(excludeScope))
+        throw new MojoExecutionException(" Can't exclude Test scope, this will exclude everything.");
+      scopes.removeAll(expandScope(excludeScope, "excludeScope"));
+    }
+    return scopes;
+  }
+
+  private static Collection<String> expandScope(String scope, String parameter) throws MojoExecutionException {
+    List<String> scopes = new ArrayList<>();
+    switch (scope) {
+    case Artifact.SCOPE_COMPILE:
+      scopes.add(Artifact.SCOPE_COMPILE);
+      scopes.add(Artifact.SCOPE_PROVIDED);
+      scopes.add(Artifact.SCOPE_SYSTEM);
+      break;
+    case Artifact.SCOPE_RUNTIME:
+      scopes.add(Artifact.SCOPE_COMPILE);
+      scopes.add(Artifact.SCOPE_RUNTIME);
+      break;
+    case Artifact.SCOPE_TEST:
+      for (String s : ALL_SCOPES)
+        scopes.add(s);
+      break;
+    case Artifact.SCOPE_PROVIDED:
+    case Artifact.SCOPE_SYSTEM:
+      scopes.add(scope);
+      break;
+    default:
+      throw new MojoExecutionException("Invalid Scope in " + parameter + ": " + scope);
+    }
+    return scopes;
+  }
+}
@@ -0,0 +1,70 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Helpers to read the OSGi headers of bundles, whether they are packaged as a jar or are a directory
+ */
+public final class BundleManifests {
+
+  public static final String BUNDLE_SYMBOLIC_NAME = "Bundle-SymbolicName";
+
+  public static final String BUNDLE_VERSION       = "Bundle-Version";
+
+  private BundleManifests() {
+  }
+
+  /**
+   * @param file the jar or directory
+   * @return the main attributes of the manifest, or null if there is no manifest
+   * @throws IOException if the manifest can't be read
+   */
+  public static Attributes read(File file) throws IOException {
+    if (file.isDirectory()) {
+      File manifestFile = new File(file, JarFile.MANIFEST_NAME);
+      if (manifestFile.isFile() == false)
+        return null;
+      try (InputStream stream = new FileInputStream(manifestFile)) {
+        return new Manifest(stream).getMainAttributes();
+      }
+    }
+    try (JarFile jarFile = new JarFile(file, false)) {
+      Manifest manifest = jarFile.getManifest();
+      return manifest == null ? null : manifest.getMainAttributes();
+    }
+  }
+
+  /**
+   * @param attributes the manifest attributes (may be null)
+   * @return the symbolic name without any directives (ie. singleton:=true), or null if it isn't a bundle
+   */
+  public static String getSymbolicName(Attributes attributes) {
+    if (attributes == null)
+      return null;
+    String value = attributes.getValue(BUNDLE_SYMBOLIC_NAME);
+    if (value == null)
+      return null;
+    int offset = value.indexOf(';');
+    if (offset != -1)
+      value = value.substring(0, offset);
+    value = value.trim();
+    return value.isEmpty() ? null : value;
+  }
+
+  /**
+   * @param attributes the manifest attributes (may be null)
+   * @return the bundle version, or 0.0.0 if none is declared
+   */
+  public static String getVersion(Attributes attributes) {
+    String value = attributes == null ? null : attributes.getValue(BUNDLE_VERSION);
+    if ((value == null) || (value.trim().isEmpty()))
+      return "0.0.0";
+    return value.trim();
+  }
+}
@@ -0,0 +1,248 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Finds the classes and packages that are provided by more than one owner (an artifact, along with its fragments).
+ * The jars are scanned in parallel into hashes of the entry names, which are merged into {@link LongIntHashMap}s, so
+ * the memory stays bounded by a few bytes per class no matter how many classes there are. Only the jars involved in an
+ * overlap are read a second time to recover the names.
+ */
+public class ClassOverlaps {
+
+  private final SortedMap<String, Set<Integer>> splitPackages    = new TreeMap<>();
+
+  private final SortedMap<String, Set<Integer>> duplicateClasses = new TreeMap<>();
+
+  private int                                   classCount;
+
+  private interface EntryVisitor {
+    void visit(String name);
+  }
+
+  private ClassOverlaps() {
+  }
+
+  /**
+   * @return the packages with classes from more than one owner, with the owners
+   */
+  public SortedMap<String, Set<Integer>> getSplitPackages() {
+    return splitPackages;
+  }
+
+  /**
+   * @return the classes that more than one owner provides, with the owners
+   */
+  public SortedMap<String, Set<Integer>> getDuplicateClasses() {
+    return duplicateClasses;
+  }
+
+  /**
+   * @return the number of classes that were scanned
+   */
+  public int getClassCount() {
+    return classCount;
+  }
+
+  /**
+   * Scans the jars (or directories)
+   *
+   * @param files the jars or directories
+   * @param owners the owner of each file. Files with the same owner (ie. a host and its fragments) never overlap.
+   * @param threads the number of threads
+   * @return the overlaps
+   * @throws MojoExecutionException if a file can't be read
+   */
+  public static ClassOverlaps scan(final List<File> files, int[] owners, int threads) throws MojoExecutionException {
+    List<Callable<long[][]>> tasks = new ArrayList<>();
+    for (final File file : files) {
+      tasks.add(new Callable<long[][]>() {
+        @Override
+        public long[][] call() throws IOException {
+          return hashEntries(file);
+        }
+      });
+    }
+    List<long[][]> hashes = ParallelTasks.run(threads, tasks);
+
+    ClassOverlaps result = new ClassOverlaps();
+    int total = 0;
+    for (long[][] h : hashes)
+      total += h[0].length;
+    result.classCount = total;
+    LongIntHashMap classIndex = new LongIntHashMap(total);
+    LongIntHashMap packageIndex = new LongIntHashMap(Math.max(16, total / 16));
+    final Map<Long, Set<Integer>> duplicateHashes = new HashMap<>();
+    final Map<Long, Set<Integer>> splitHashes = new HashMap<>();
+    for (int i = 0; i < hashes.size(); i++) {
+      long[][] h = hashes.get(i);
+      hashes.set(i, null);
+      merge(classIndex, h[0], owners[i], duplicateHashes);
+      merge(packageIndex, h[1], owners[i], splitHashes);
+    }
+    if (duplicateHashes.isEmpty() && splitHashes.isEmpty())
+      return result;
+
+    /* Recover the names from the files of the owners involved in an overlap */
+    Set<Integer> involved = new TreeSet<>();
+    for (Set<Integer> set : duplicateHashes.values())
+      involved.addAll(set);
+    for (Set<Integer> set : splitHashes.values())
+      involved.addAll(set);
+    List<Callable<Map<Long, String>>> nameTasks = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      if (involved.contains(owners[i]) == false)
+        continue;
+      final File file = files.get(i);
+      nameTasks.add(new Callable<Map<Long, String>>() {
+        @Override
+        public Map<Long, String> call() throws IOException {
+          final Map<Long, String> names = new HashMap<>();
+          visitClasses(file, new EntryVisitor() {
+            @Override
+            public void visit(String name) {
+              Long hash = LongIntHashMap.hash(name);
+              if (duplicateHashes.containsKey(hash))
+                names.put(hash, name.substring(0, name.length() - 6).replace('/', '.'));
+              String pkg = getPackage(name);
+              hash = LongIntHashMap.hash(pkg);
+              if (splitHashes.containsKey(hash))
+                names.put(hash, pkg.replace('/', '.'));
+            }
+          });
+          return names;
+        }
+      });
+    }
+    Map<Long, String> names = new HashMap<>();
+    for (Map<Long, String> map : ParallelTasks.run(threads, nameTasks))
+      names.putAll(map);
+    for (Map.Entry<Long, Set<Integer>> entry : duplicateHashes.entrySet())
+      if (names.containsKey(entry.getKey()))
+        result.duplicateClasses.put(names.get(entry.getKey()), entry.getValue());
+    for (Map.Entry<Long, Set<Integer>> entry : splitHashes.entrySet())
+      if (names.containsKey(entry.getKey()))
+        result.splitPackages.put(names.get(entry.getKey()), entry.getValue());
+    return result;
+  }
+
+  private static void merge(LongIntHashMap index, long[] hashes, int owner, Map<Long, Set<Integer>> overlaps) {
+    for (long hash : hashes) {
+      int previous = index.putIfAbsent(hash, owner);
+      if ((previous == -1) || (previous == owner))
+        continue;
+      Set<Integer> set = overlaps.get(hash);
+      if (set == null) {
+        set = new TreeSet<>();
+        overlaps.put(hash, set);
+      }
+      set.add(previous);
+      set.add(owner);
+    }
+  }
+
+  /**
+   * @param file the jar or directory
+   * @return the hashes of the class names and the (distinct) hashes of the package names
+   */
+  private static long[][] hashEntries(File file) throws IOException {
+    final long[][] classes = new long[][] {new long[64]};
+    final int[] count = new int[1];
+    final LongIntHashMap packages = new LongIntHashMap(16);
+    final List<Long> packageHashes = new ArrayList<>();
+    visitClasses(file, new EntryVisitor() {
+      @Override
+      public void visit(String name) {
+        if (count[0] == classes[0].length)
+          classes[0] = Arrays.copyOf(classes[0], count[0] * 2);
+        classes[0][count[0]++] = LongIntHashMap.hash(name);
+        long pkg = LongIntHashMap.hash(getPackage(name));
+        if (packages.putIfAbsent(pkg, 0) == -1)
+          packageHashes.add(pkg);
+      }
+    });
+    long[] packageArray = new long[packageHashes.size()];
+    for (int i = 0; i < packageArray.length; i++)
+      packageArray[i] = packageHashes.get(i);
+    return new long[][] {Arrays.copyOf(classes[0], count[0]), packageArray};
+  }
+
+  private static String getPackage(String name) {
+    int offset = name.lastIndexOf('/');
+    return offset == -1 ? "" : name.substring(0, offset);
+  }
+
+  private static boolean isClass(String name) {
+    if ((name.endsWith(".class") == false) || name.startsWith("META-INF/"))
+      return false;
+    return (name.endsWith("module-info.class") == false) && (name.endsWith("package-info.class") == false)
+      && (name.indexOf('/') != -1);
+  }
+
+  private static void visitClasses(File file, final EntryVisitor visitor) throws IOException {
+    if (file.isDirectory()) {
+      final Path root = file.toPath();
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+          String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+          if (isClass(name))
+            visitor.visit(name);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      return;
+    }
+    try (ZipFile zipFile = new ZipFile(file)) {
+      for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+        ZipEntry entry = e.nextElement();
+        if ((entry.isDirectory() == false) && isClass(entry.getName()))
+          visitor.visit(entry.getName());
+      }
+    }
+  }
+
+  /**
+   * Groups overlaps by the owners they are shared by, so that two artifacts sharing thousands of classes are reported
+   * once
+   *
+   * @param overlaps the overlaps
+   * @return the names of the overlaps, for each set of owners
+   */
+  public static Map<Set<Integer>, List<String>> groupByOwners(Map<String, Set<Integer>> overlaps) {
+    Map<Set<Integer>, List<String>> groups = new HashMap<>();
+    for (Map.Entry<String, Set<Integer>> entry : overlaps.entrySet()) {
+      List<String> names = groups.get(entry.getValue());
+      if (names == null) {
+        names = new ArrayList<>();
+        groups.put(entry.getValue(), names);
+      }
+      names.add(entry.getKey());
+    }
+    for (List<String> names : groups.values())
+      Collections.sort(names);
+    return groups;
+  }
+}
@@ -0,0 +1,143 @@
+package com.diamondq.maven;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Finds the highest class file version in a jar (or directory), and relates class file versions to Java versions and
+ * execution environments. Only the 8 byte header of each class is read. Multi-release classes (under
+ * <code>META-INF/versions</code>) and <code>module-info.class</code> are skipped, since older runtimes never load them.
+ */
+public final class ClassVersions {
+
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private ClassVersions() {
+  }
+
+  /**
+   * @param file the jar or directory
+   * @return the highest class file major version, or 0 if there are no classes
+   * @throws IOException if the jar can't be read
+   */
+  public static int getMaxMajorVersion(File file) throws IOException {
+    if (file.isDirectory())
+      return getMaxMajorVersionOfDirectory(file.toPath());
+    int max = 0;
+    try (ZipFile zipFile = new ZipFile(file)) {
+      for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+        ZipEntry entry = e.nextElement();
+        if ((entry.isDirectory() == false) && isChecked(entry.getName())) {
+          try (InputStream stream = zipFile.getInputStream(entry)) {
+            max = Math.max(max, readMajorVersion(stream));
+          }
+        }
+      }
+    }
+    return max;
+  }
+
+  private static int getMaxMajorVersionOfDirectory(final Path root) throws IOException {
+    final int[] max = new int[1];
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+        if (isChecked(root.relativize(path).toString().replace(File.separatorChar, '/'))) {
+          try (InputStream stream = new FileInputStream(path.toFile())) {
+            max[0] = Math.max(max[0], readMajorVersion(stream));
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return max[0];
+  }
+
+  private static boolean isChecked(String name) {
+    return name.endsWith(".class") && (name.startsWith("META-INF/versions/") == false)
+      && (name.equals("module-info.class") == false);
+  }
+
+  private static int readMajorVersion(InputStream stream) throws IOException {
+    DataInputStream data = new DataInputStream(stream);
+    try {
+      if (data.readInt() != MAGIC)
+        return 0;
+      data.readUnsignedShort();
+      return data.readUnsignedShort();
+    }
+    catch (EOFException ex) {
+      return 0;
+    }
+  }
+
+  /**
+   * @param javaVersion the Java version (ie. 8 or 11)
+   * @return the class file major version of that Java version
+   */
+  public static int toMajorVersion(int javaVersion) {
+    return javaVersion + 44;
+  }
+
+  /**
+   * @param majorVersion the class file major version
+   * @return a description of the Java version (ie. <code>Java 17</code>)
+   */
+  public static String describe(int majorVersion) {
+    if (majorVersion < 49)
+      return "Java 1." + Math.max(majorVersion - 44, 1);
+    return "Java " + (majorVersion - 44);
+  }
+
+  /**
+   * Determines the highest class file version that a bundle can use with its Bundle-RequiredExecutionEnvironment. The
+   * bundle has to run on every environment it lists, so that's the version of the oldest one.
+   *
+   * @param header the Bundle-RequiredExecutionEnvironment header (may be null)
+   * @return the class file major version, or 0 if the header doesn't name a Java SE environment
+   */
+  public static int getMaxMajorVersion(String header) {
+    if (StringUtils.isEmpty(header))
+      return 0;
+    int result = 0;
+    for (String ee : StringUtils.split(header, ",")) {
+      int major = parseExecutionEnvironment(ee.trim());
+      if ((major != 0) && ((result == 0) || (major < result)))
+        result = major;
+    }
+    return result;
+  }
+
+  private static int parseExecutionEnvironment(String ee) {
+    int offset = ee.indexOf('-');
+    if (offset == -1)
+      return 0;
+    String name = ee.substring(0, offset);
+    if (("JavaSE".equals(name) == false) && ("J2SE".equals(name) == false) && ("JRE".equals(name) == false))
+      return 0;
+    String version = ee.substring(offset + 1);
+    try {
+      if (version.startsWith("1."))
+        return toMajorVersion(Integer.parseInt(version.substring(2)));
+      return toMajorVersion(Integer.parseInt(version));
+    }
+    catch (NumberFormatException ex) {
+      /* ie. JavaSE/compact1-1.8 */
+      return 0;
+    }
+  }
+}
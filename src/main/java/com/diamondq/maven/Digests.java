@@ -0,0 +1,93 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers to hash the contents of files (and strings)
+ */
+public final class Digests {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Digests() {
+  }
+
+  /**
+   * @param file the file
+   * @return the SHA-1 of the contents of the file as a lower case hex string
+   * @throws IOException if the file can't be read
+   */
+  public static String sha1(File file) throws IOException {
+    return digest(file, "SHA-1");
+  }
+
+  /**
+   * @param file the file
+   * @param cache the cache of previously calculated SHA-1s
+   * @return the SHA-1 of the contents of the file, only calculated if the file changed since it was cached
+   * @throws IOException if the file can't be read
+   */
+  public static String sha1(File file, FileStampCache cache) throws IOException {
+    String checksum = cache.get(file);
+    if (checksum == null) {
+      checksum = sha1(file);
+      cache.put(file, checksum);
+    }
+    return checksum;
+  }
+
+  /**
+   * @param file the file
+   * @param algorithm the digest algorithm (ie. SHA-256)
+   * @return the digest of the contents of the file as a lower case hex string
+   * @throws IOException if the file can't be read
+   */
+  public static String digest(File file, String algorithm) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(algorithm);
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IllegalArgumentException(ex);
+    }
+    byte[] buffer = new byte[65536];
+    try (InputStream stream = new FileInputStream(file)) {
+      int read;
+      while ((read = stream.read(buffer)) != -1)
+        digest.update(buffer, 0, read);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * @param value the string
+   * @return the SHA-1 of the UTF-8 bytes of the string as a lower case hex string
+   */
+  public static String sha1(String value) {
+    try {
+      return toHex(MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IllegalArgumentException(ex);
+    }
+  }
+
+  /**
+   * @param bytes the bytes
+   * @return the bytes as a lower case hex string
+   */
+  public static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+}
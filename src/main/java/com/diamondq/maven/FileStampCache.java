@@ -0,0 +1,150 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A small persistent cache of values that were derived from the contents of files (hashes, manifest details, scan
+ * results). An entry is only returned while the file still has the size and modification time it had when the entry
+ * was stored, so the expensive derivation only happens again once the file changes. The cache is thread safe.
+ */
+public class FileStampCache {
+
+  private final File                          cacheFile;
+
+  private final ConcurrentMap<String, String> entries = new ConcurrentHashMap<>();
+
+  private volatile boolean                    modified;
+
+  /**
+   * Loads the cache. A missing or unreadable cache file just results in an empty cache.
+   *
+   * @param cacheFile the file the cache is stored in
+   */
+  public FileStampCache(File cacheFile) {
+    this.cacheFile = cacheFile;
+    if (cacheFile.isFile()) {
+      Properties properties = new Properties();
+      try (InputStream stream = new FileInputStream(cacheFile)) {
+        properties.load(stream);
+        for (String key : properties.stringPropertyNames())
+          entries.put(key, properties.getProperty(key));
+      }
+      catch (IOException | IllegalArgumentException ex) {
+        entries.clear();
+      }
+    }
+  }
+
+  /**
+   * @param file the file
+   * @return the value stored for the file, or null if there is none or the file has changed since
+   */
+  public String get(File file) {
+    String entry = entries.get(file.getAbsolutePath());
+    if (entry == null)
+      return null;
+    String stamp = getStamp(file);
+    if ((entry.length() <= stamp.length()) || (entry.startsWith(stamp) == false)
+      || (entry.charAt(stamp.length()) != ':'))
+      return null;
+    return entry.substring(stamp.length() + 1);
+  }
+
+  /**
+   * @param file the file
+   * @param value the value derived from the current contents of the file
+   */
+  public void put(File file, String value) {
+    String entry = getStamp(file) + ":" + value;
+    String old = entries.put(file.getAbsolutePath(), entry);
+    if (entry.equals(old) == false)
+      modified = true;
+  }
+
+  /**
+   * Drops the entries of every file that isn't one of the given files, so the cache doesn't keep growing with files
+   * that were replaced or removed since
+   *
+   * @param files the files whose entries are kept
+   */
+  public void retain(Collection<File> files) {
+    Set<String> keys = new HashSet<>();
+    for (File file : files)
+      keys.add(file.getAbsolutePath());
+    for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();) {
+      if (keys.contains(i.next()) == false) {
+        i.remove();
+        modified = true;
+      }
+    }
+  }
+
+  /**
+   * Drops the entries of the files that no longer exist
+   */
+  public void removeMissing() {
+    for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();) {
+      if (new File(i.next()).exists() == false) {
+        i.remove();
+        modified = true;
+      }
+    }
+  }
+
+  /**
+   * @return the values of every entry, including the ones whose file has changed since
+   */
+  public List<String> getValues() {
+    List<String> values = new ArrayList<>();
+    for (String entry : entries.values()) {
+      int offset = entry.indexOf(':', entry.indexOf(':') + 1);
+      if (offset != -1)
+        values.add(entry.substring(offset + 1));
+    }
+    return values;
+  }
+
+  /**
+   * Writes the cache back to disk, if anything changed
+   *
+   * @throws IOException if the cache can't be written
+   */
+  public void save() throws IOException {
+    if (modified == false)
+      return;
+    Properties properties = new Properties();
+    for (Map.Entry<String, String> entry : entries.entrySet())
+      properties.setProperty(entry.getKey(), entry.getValue());
+    File parent = cacheFile.getAbsoluteFile().getParentFile();
+    if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+      throw new IOException("Unable to create " + parent);
+    File temp = new File(parent, cacheFile.getName() + ".tmp");
+    try (OutputStream stream = new FileOutputStream(temp)) {
+      properties.store(stream, null);
+    }
+    if ((cacheFile.delete() == false) && cacheFile.exists())
+      throw new IOException("Unable to replace " + cacheFile);
+    if (temp.renameTo(cacheFile) == false)
+      throw new IOException("Unable to rename " + temp + " to " + cacheFile);
+    modified = false;
+  }
+
+  private static String getStamp(File file) {
+    return file.length() + ":" + file.lastModified();
+  }
+}
@@ -0,0 +1,88 @@
+package com.diamondq.maven;
+
+import java.io.File;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Writes a Karaf features.xml with a single feature that installs every artifact of the target. Artifacts that aren't
+ * bundles are installed through the <code>wrap:</code> protocol.
+ */
+public class KarafFeaturesEmitter extends AbstractFileEmitter {
+
+  private final String featureName;
+
+  private final String featureVersion;
+
+  /**
+   * @param outputFile the file to write
+   * @param featureName the name of the feature (and the features repository)
+   * @param featureVersion the version of the feature
+   */
+  public KarafFeaturesEmitter(File outputFile, String featureName, String featureVersion) {
+    super(outputFile, false);
+    this.featureName = featureName;
+    this.featureVersion = featureVersion;
+  }
+
+  @Override
+  public String getName() {
+    return "Karaf features";
+  }
+
+  @Override
+  protected String render(ResolvedTarget target, Log log) throws MojoExecutionException {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    sb.append("<features name=\"");
+    sb.append(escapeXml(featureName));
+    sb.append("\" xmlns=\"http://karaf.apache.org/xmlns/features/v1.4.0\">\n");
+    sb.append("\t<feature name=\"");
+    sb.append(escapeXml(featureName));
+    sb.append("\" version=\"");
+    sb.append(escapeXml(featureVersion));
+    sb.append("\" description=\"");
+    sb.append(escapeXml(target.getName()));
+    sb.append("\">\n");
+    for (Artifact artifact : target.getArtifacts()) {
+      sb.append("\t\t<bundle>");
+      if (BundleManifests.getSymbolicName(target.getManifest(artifact)) == null)
+        sb.append("wrap:");
+      sb.append(escapeXml(getMvnUrl(artifact)));
+      sb.append("</bundle>\n");
+    }
+    sb.append("\t</feature>\n");
+    sb.append("</features>\n");
+    return sb.toString();
+  }
+
+  /**
+   * @param artifact the artifact
+   * @return the Pax URL (mvn:groupId/artifactId/version[/type[/classifier]]) of the artifact
+   */
+  static String getMvnUrl(Artifact artifact) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("mvn:");
+    sb.append(artifact.getGroupId());
+    sb.append('/');
+    sb.append(artifact.getArtifactId());
+    sb.append('/');
+    sb.append(artifact.getBaseVersion());
+    String extension = (artifact.getArtifactHandler() == null) ? null : artifact.getArtifactHandler().getExtension();
+    if (StringUtils.isEmpty(extension))
+      extension = "jar";
+    String classifier = artifact.getClassifier();
+    if (StringUtils.isNotEmpty(classifier) || ("jar".equals(extension) == false)) {
+      sb.append('/');
+      sb.append(extension);
+      if (StringUtils.isNotEmpty(classifier)) {
+        sb.append('/');
+        sb.append(classifier);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,198 @@
+package com.diamondq.maven;
+
+import java.util.Map;
+
+/**
+ * Evaluates an LDAP style filter (ie. an Eclipse-PlatformFilter or a Bundle-NativeCode selection-filter) against a
+ * set of properties. Properties that aren't set are unknown rather than absent: a comparison with an unknown property
+ * is neither true nor false, so a filter only fails when it fails for every possible value of the unknown properties.
+ */
+public final class LdapFilter {
+
+  private final String filter;
+
+  private int          offset;
+
+  private LdapFilter(String filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * @param filter the filter
+   * @param properties the known properties
+   * @return TRUE or FALSE if the filter matches or not, or null if that depends on unknown properties
+   * @throws IllegalArgumentException if the filter is invalid
+   */
+  public static Boolean evaluate(String filter, Map<String, String> properties) {
+    LdapFilter parser = new LdapFilter(filter.trim());
+    Boolean result = parser.parseFilter(properties);
+    parser.skipWhitespace();
+    if (parser.offset != parser.filter.length())
+      throw parser.error();
+    return result;
+  }
+
+  /**
+   * @param value a value to compare with in a filter
+   * @return the value, with the characters that have a meaning in a filter (<code>\ ( ) *</code>) escaped
+   */
+  public static String escape(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if ((c == '\\') || (c == '(') || (c == ')') || (c == '*'))
+        sb.append('\\');
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  private Boolean parseFilter(Map<String, String> properties) {
+    skipWhitespace();
+    expect('(');
+    skipWhitespace();
+    Boolean result;
+    char c = peek();
+    if (c == '&') {
+      offset++;
+      result = Boolean.TRUE;
+      while (peekFilter()) {
+        Boolean operand = parseFilter(properties);
+        if (Boolean.FALSE.equals(operand) || Boolean.FALSE.equals(result))
+          result = Boolean.FALSE;
+        else if (operand == null)
+          result = null;
+      }
+    }
+    else if (c == '|') {
+      offset++;
+      result = Boolean.FALSE;
+      while (peekFilter()) {
+        Boolean operand = parseFilter(properties);
+        if (Boolean.TRUE.equals(operand) || Boolean.TRUE.equals(result))
+          result = Boolean.TRUE;
+        else if (operand == null)
+          result = null;
+      }
+    }
+    else if (c == '!') {
+      offset++;
+      Boolean operand = parseFilter(properties);
+      result = operand == null ? null : Boolean.valueOf(operand.booleanValue() == false);
+    }
+    else
+      result = parseComparison(properties);
+    skipWhitespace();
+    expect(')');
+    return result;
+  }
+
+  private Boolean parseComparison(Map<String, String> properties) {
+    int start = offset;
+    while ((offset < filter.length()) && ("=<>~()".indexOf(filter.charAt(offset)) == -1))
+      offset++;
+    String key = filter.substring(start, offset).trim();
+    if (key.isEmpty() || (offset >= filter.length()))
+      throw error();
+    String operator;
+    char c = filter.charAt(offset);
+    if (c == '=')
+      operator = "=";
+    else if (((c == '<') || (c == '>') || (c == '~')) && (offset + 1 < filter.length())
+      && (filter.charAt(offset + 1) == '='))
+      operator = c + "=";
+    else
+      throw error();
+    offset += operator.length();
+    start = offset;
+    StringBuilder value = new StringBuilder();
+    while ((offset < filter.length()) && (filter.charAt(offset) != ')')) {
+      char ch = filter.charAt(offset++);
+      if ((ch == '\\') && (offset < filter.length()))
+        ch = filter.charAt(offset++);
+      value.append(ch);
+    }
+
+    /* Keys are case insensitive */
+    String actual = null;
+    boolean known = false;
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      if (entry.getKey().equalsIgnoreCase(key)) {
+        actual = entry.getValue();
+        known = true;
+        break;
+      }
+    }
+    if (known == false)
+      return null;
+    String expected = value.toString().trim();
+    if (actual == null)
+      return Boolean.FALSE;
+    switch (operator) {
+    case "~=":
+      return Boolean.valueOf(normalize(actual).equals(normalize(expected)));
+    case ">=":
+      return Boolean.valueOf(actual.compareTo(expected) >= 0);
+    case "<=":
+      return Boolean.valueOf(actual.compareTo(expected) <= 0);
+    default:
+      if ("*".equals(expected))
+        return Boolean.TRUE;
+      return Boolean.valueOf(matchesWildcard(actual, expected));
+    }
+  }
+
+  private static String normalize(String value) {
+    return value.replaceAll("\\s", "").toLowerCase();
+  }
+
+  private static boolean matchesWildcard(String actual, String pattern) {
+    if (pattern.indexOf('*') == -1)
+      return actual.equals(pattern);
+    String[] parts = pattern.split("\\*", -1);
+    int position = 0;
+    for (int i = 0; i < parts.length; i++) {
+      String part = parts[i];
+      if (i == 0) {
+        if (actual.startsWith(part) == false)
+          return false;
+        position = part.length();
+      }
+      else if (i == parts.length - 1)
+        return (actual.length() - position >= part.length()) && actual.endsWith(part);
+      else {
+        int found = actual.indexOf(part, position);
+        if (found == -1)
+          return false;
+        position = found + part.length();
+      }
+    }
+    return true;
+  }
+
+  private boolean peekFilter() {
+    skipWhitespace();
+    return (offset < filter.length()) && (filter.charAt(offset) == '(');
+  }
+
+  private char peek() {
+    if (offset >= filter.length())
+      throw error();
+    return filter.charAt(offset);
+  }
+
+  private void expect(char c) {
+    if ((offset >= filter.length()) || (filter.charAt(offset) != c))
+      throw error();
+    offset++;
+  }
+
+  private void skipWhitespace() {
+    while ((offset < filter.length()) && Character.isWhitespace(filter.charAt(offset)))
+      offset++;
+  }
+
+  private IllegalArgumentException error() {
+    return new IllegalArgumentException("Invalid filter at offset " + offset + ": " + filter);
+  }
+}
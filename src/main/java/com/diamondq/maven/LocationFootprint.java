@@ -0,0 +1,135 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * What PDE has to scan for one location of a target. Like PDE, only the children of the location (or of its
+ * <code>plugins</code> directory, if it has one) are looked at: the files, the entries of the jars, and the manifest of
+ * each directory shaped bundle, whose other files PDE never reads. The jars are only inspected through their central
+ * directory, none of the entries are read.
+ */
+public class LocationFootprint {
+
+  private final File         location;
+
+  private final List<String> artifacts   = new ArrayList<>();
+
+  private final List<String> foreignJars = new ArrayList<>();
+
+  private long               files;
+
+  private long               bytes;
+
+  private long               jars;
+
+  private long               jarEntries;
+
+  private long               classes;
+
+  /**
+   * @param location the location directory
+   */
+  public LocationFootprint(File location) {
+    this.location = location;
+  }
+
+  /**
+   * Lists the location directory.
+   *
+   * @param location the location directory
+   * @param artifactFiles the files of the resolved artifacts that are loaded from this location
+   * @param artifactNames the names of those artifacts, for the report
+   * @return the footprint
+   * @throws IOException if the directory can't be listed
+   */
+  public static LocationFootprint scan(File location, Collection<File> artifactFiles,
+    Collection<String> artifactNames) throws IOException {
+    LocationFootprint footprint = new LocationFootprint(location);
+    footprint.artifacts.addAll(artifactNames);
+    if (location.isDirectory() == false)
+      return footprint;
+    File plugins = new File(location, "plugins");
+    File[] children = (plugins.isDirectory() ? plugins : location).listFiles();
+    if (children == null)
+      throw new IOException("Unable to list " + location);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        footprint.add(new File(child, JarFile.MANIFEST_NAME));
+        continue;
+      }
+      if (footprint.add(child) && child.getName().endsWith(".jar")) {
+        footprint.jars++;
+        if (artifactFiles.contains(child) == false)
+          footprint.foreignJars.add(child.getName());
+        footprint.scanJar(child);
+      }
+    }
+    Collections.sort(footprint.foreignJars);
+    return footprint;
+  }
+
+  private boolean add(File file) {
+    if (file.isFile() == false)
+      return false;
+    files++;
+    bytes += file.length();
+    return true;
+  }
+
+  private void scanJar(File file) {
+    try (ZipFile zipFile = new ZipFile(file)) {
+      for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+        ZipEntry entry = e.nextElement();
+        if (entry.isDirectory())
+          continue;
+        jarEntries++;
+        if (entry.getName().endsWith(".class"))
+          classes++;
+      }
+    }
+    catch (IOException ex) {
+      /* Not a valid jar. PDE will skip it as well, but it still costs a scan, which is already counted */
+    }
+  }
+
+  public File getLocation() {
+    return location;
+  }
+
+  public List<String> getArtifacts() {
+    return artifacts;
+  }
+
+  public List<String> getForeignJars() {
+    return foreignJars;
+  }
+
+  public long getFiles() {
+    return files;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getJars() {
+    return jars;
+  }
+
+  public long getJarEntries() {
+    return jarEntries;
+  }
+
+  public long getClasses() {
+    return classes;
+  }
+}
@@ -0,0 +1,198 @@
+package com.diamondq.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * The resolved artifacts of a target, recorded so that a later execution can produce the same target without resolving
+ * anything. Along with the artifacts, the lock file holds a hash of everything that influences the resolution (the
+ * dependencies of the POM and the filter settings), so that it is only replayed while those are unchanged.
+ * <p>
+ * The file has one line per artifact (<code>groupId:artifactId:type:classifier:version:scope</code>, the path, the
+ * size and the SHA-1, separated by tabs), in target order. Paths inside the local repository are relative to it, so
+ * the lock file can be shared between machines. Directories (ie. the output directory of a reactor module) are
+ * recorded with a size of {@link #DIRECTORY} and no checksum.
+ */
+public class LockFile {
+
+  private static final String HEADER    = "# osgi-target lock file";
+
+  private static final String HASH      = "hash=";
+
+  /**
+   * The size of a locked directory
+   */
+  public static final long    DIRECTORY = -1;
+
+  /**
+   * A locked artifact
+   */
+  public static class Entry {
+
+    public final String groupId;
+
+    public final String artifactId;
+
+    public final String type;
+
+    public final String classifier;
+
+    public final String version;
+
+    public final String scope;
+
+    public final String path;
+
+    public final long   size;
+
+    public final String sha1;
+
+    public Entry(String groupId, String artifactId, String type, String classifier, String version, String scope,
+      String path, long size, String sha1) {
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.type = type;
+      this.classifier = classifier == null ? "" : classifier;
+      this.version = version;
+      this.scope = scope == null ? "" : scope;
+      this.path = path;
+      this.size = size;
+      this.sha1 = sha1;
+    }
+
+    /**
+     * @param localRepository the base directory of the local repository
+     * @return the file of the artifact
+     */
+    public File getFile(File localRepository) {
+      File file = new File(path);
+      if (file.isAbsolute())
+        return file;
+      return new File(localRepository, path);
+    }
+
+    /**
+     * @param file the file of the artifact
+     * @return true if the file still exists, with the same size
+     */
+    public boolean isUnchanged(File file) {
+      if (size == DIRECTORY)
+        return file.isDirectory();
+      return file.isFile() && (file.length() == size);
+    }
+  }
+
+  private final String      hash;
+
+  private final List<Entry> entries;
+
+  /**
+   * @param hash the hash of the resolution inputs
+   * @param entries the artifacts, in target order
+   */
+  public LockFile(String hash, List<Entry> entries) {
+    this.hash = hash;
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  public String getHash() {
+    return hash;
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * @param file the file
+   * @param localRepository the base directory of the local repository
+   * @return the path to store for the file
+   */
+  public static String toPath(File file, File localRepository) {
+    String path = file.getAbsolutePath();
+    String base = localRepository.getAbsolutePath() + File.separator;
+    if (path.startsWith(base))
+      return path.substring(base.length()).replace(File.separatorChar, '/');
+    return path;
+  }
+
+  /**
+   * @param file the lock file
+   * @return the lock file, or null if it doesn't exist or can't be parsed
+   * @throws IOException if the file can't be read
+   */
+  public static LockFile read(File file) throws IOException {
+    if (file.isFile() == false)
+      return null;
+    String hash = null;
+    List<Entry> entries = new ArrayList<>();
+    try (BufferedReader reader =
+      new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#"))
+          continue;
+        if (line.startsWith(HASH)) {
+          hash = line.substring(HASH.length());
+          continue;
+        }
+        String[] fields = line.split("\t");
+        if (fields.length != 4)
+          return null;
+        String[] coords = fields[0].split(":", -1);
+        if (coords.length != 6)
+          return null;
+        try {
+          entries.add(new Entry(coords[0], coords[1], coords[2], coords[3], coords[4], coords[5], fields[1],
+            Long.parseLong(fields[2]), fields[3]));
+        }
+        catch (NumberFormatException ex) {
+          return null;
+        }
+      }
+    }
+    return hash == null ? null : new LockFile(hash, entries);
+  }
+
+  /**
+   * @return the contents of the lock file
+   */
+  public String render() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(HEADER).append('\n');
+    sb.append(HASH).append(hash).append('\n');
+    for (Entry entry : entries) {
+      sb.append(entry.groupId).append(':').append(entry.artifactId).append(':').append(entry.type).append(':')
+        .append(entry.classifier).append(':').append(entry.version).append(':').append(entry.scope);
+      sb.append('\t').append(entry.path).append('\t').append(entry.size).append('\t').append(entry.sha1).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the lock file, unless it already has the same contents
+   *
+   * @param file the file
+   * @return true if the file was written
+   * @throws IOException if the file can't be written
+   */
+  public boolean write(File file) throws IOException {
+    String content = render();
+    if (file.isFile() && content.equals(FileUtils.fileRead(file, "UTF-8")))
+      return false;
+    File parent = file.getAbsoluteFile().getParentFile();
+    if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+      throw new IOException("Unable to create " + parent);
+    FileUtils.fileWrite(file, "UTF-8", content);
+    return true;
+  }
+}
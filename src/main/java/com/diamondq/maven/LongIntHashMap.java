@@ -0,0 +1,119 @@
+package com.diamondq.maven;
+
+/**
+ * An open addressing hash map from long keys to int values, without boxing and with two arrays as the only storage
+ * (12 bytes per slot). Used to index millions of hashed names without holding the names themselves. Values must not
+ * be negative. Not thread safe.
+ */
+public class LongIntHashMap {
+
+  private static final long EMPTY = 0;
+
+  private long[]            keys;
+
+  private int[]             values;
+
+  private int               size;
+
+  private int               mask;
+
+  /**
+   * @param expectedSize the number of entries to size the map for
+   */
+  public LongIntHashMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2)
+      capacity <<= 1;
+    keys = new long[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param key the key
+   * @return the value of the key, or -1 if there is none
+   */
+  public int get(long key) {
+    key = fix(key);
+    for (int slot = slot(key);; slot = (slot + 1) & mask) {
+      long k = keys[slot];
+      if (k == key)
+        return values[slot];
+      if (k == EMPTY)
+        return -1;
+    }
+  }
+
+  /**
+   * Adds the key with the value, unless the key is already present
+   *
+   * @param key the key
+   * @param value the value (not negative)
+   * @return the existing value of the key, or -1 if the key was added
+   */
+  public int putIfAbsent(long key, int value) {
+    key = fix(key);
+    for (int slot = slot(key);; slot = (slot + 1) & mask) {
+      long k = keys[slot];
+      if (k == key)
+        return values[slot];
+      if (k == EMPTY) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length)
+          grow();
+        return -1;
+      }
+    }
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new long[oldKeys.length * 2];
+    values = new int[oldValues.length * 2];
+    mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key == EMPTY)
+        continue;
+      int slot = slot(key);
+      while (keys[slot] != EMPTY)
+        slot = (slot + 1) & mask;
+      keys[slot] = key;
+      values[slot] = oldValues[i];
+    }
+  }
+
+  /* 0 marks an empty slot, so that key is stored as 1 (the keys are hashes, so this only adds a collision) */
+  private static long fix(long key) {
+    return key == EMPTY ? 1 : key;
+  }
+
+  private int slot(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  /**
+   * Hashes a name into 64 bits (FNV-1a). With a few million names, a collision is unlikely enough to ignore.
+   *
+   * @param name the name
+   * @return the hash
+   */
+  public static long hash(String name) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < name.length(); i++) {
+      h ^= name.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+}
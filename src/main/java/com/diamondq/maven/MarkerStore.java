@@ -0,0 +1,126 @@
+package com.diamondq.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.artifact.filter.collection.AbstractArtifactsFilter;
+
+/**
+ * Records which artifacts were already processed, in a single append-only file instead of one marker file per
+ * artifact (which is what the marker handlers of the dependency plugin do). The file is read once, membership is
+ * answered from memory, and a batch of artifacts is marked with a single append.
+ */
+public class MarkerStore {
+
+  private final File        storeFile;
+
+  private final Set<String> marked = new HashSet<>();
+
+  /**
+   * Loads the store. A missing store is just empty.
+   *
+   * @param storeFile the file the markers are stored in
+   * @throws IOException if the store exists but can't be read
+   */
+  public MarkerStore(File storeFile) throws IOException {
+    this.storeFile = storeFile;
+    if (storeFile.isFile()) {
+      try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null)
+          if (line.isEmpty() == false)
+            marked.add(line);
+      }
+    }
+  }
+
+  /**
+   * @param artifact the artifact
+   * @return the key the artifact is stored under
+   */
+  static String getKey(Artifact artifact) {
+    return artifact.getId();
+  }
+
+  /**
+   * @param artifact the artifact
+   * @return true if the artifact was marked as processed
+   */
+  public synchronized boolean isMarked(Artifact artifact) {
+    return marked.contains(getKey(artifact));
+  }
+
+  /**
+   * @return the number of marked artifacts
+   */
+  public synchronized int size() {
+    return marked.size();
+  }
+
+  /**
+   * Marks the artifacts as processed. Only the artifacts that weren't marked yet are appended to the store.
+   *
+   * @param artifacts the artifacts
+   * @return the number of artifacts that were newly marked
+   * @throws IOException if the store can't be written
+   */
+  public synchronized int markAll(Collection<Artifact> artifacts) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int count = 0;
+    for (Artifact artifact : artifacts) {
+      String key = getKey(artifact);
+      if (marked.add(key)) {
+        sb.append(key).append('\n');
+        count++;
+      }
+    }
+    if (count == 0)
+      return 0;
+
+    File parent = storeFile.getAbsoluteFile().getParentFile();
+    if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+      throw new IOException("Unable to create " + parent);
+    try (FileOutputStream stream = new FileOutputStream(storeFile, true); FileChannel channel = stream.getChannel();
+      FileLock lock = channel.lock()) {
+      ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+    }
+    return count;
+  }
+
+  /**
+   * @return a filter that only includes the artifacts that aren't marked yet
+   */
+  public AbstractArtifactsFilter newUnmarkedFilter() {
+    return new AbstractArtifactsFilter() {
+      @Override
+      public Set<Artifact> filter(Set<Artifact> artifacts) {
+        Set<Artifact> result = new LinkedHashSet<>();
+        for (Artifact artifact : artifacts)
+          if (isMarked(artifact) == false)
+            result.add(artifact);
+        return result;
+      }
+
+      @Override
+      public boolean isArtifactIncluded(Artifact artifact) {
+        return isMarked(artifact) == false;
+      }
+    };
+  }
+}
@@ -0,0 +1,145 @@
+package com.diamondq.maven;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses OSGi manifest headers (ie. Import-Package, Export-Package, Require-Bundle) into their clauses. A clause is a
+ * list of paths (package names or symbolic names) that share the same attributes (<code>name=value</code>) and
+ * directives (<code>name:=value</code>). Quoted values may contain the separators.
+ */
+public final class OsgiHeaders {
+
+  /**
+   * A single clause of a header
+   */
+  public static class Clause {
+
+    private final List<String>        paths;
+
+    private final Map<String, String> attributes;
+
+    private final Map<String, String> directives;
+
+    private final List<String[]>      allAttributes;
+
+    Clause(List<String> paths, Map<String, String> attributes, Map<String, String> directives,
+      List<String[]> allAttributes) {
+      this.paths = Collections.unmodifiableList(paths);
+      this.attributes = Collections.unmodifiableMap(attributes);
+      this.directives = Collections.unmodifiableMap(directives);
+      this.allAttributes = allAttributes;
+    }
+
+    public List<String> getPaths() {
+      return paths;
+    }
+
+    public String getAttribute(String name) {
+      return attributes.get(name);
+    }
+
+    public String getDirective(String name) {
+      return directives.get(name);
+    }
+
+    /**
+     * Some headers (ie. Bundle-NativeCode) repeat attributes, in which case {@link #getAttribute(String)} only returns
+     * the last value
+     *
+     * @param name the attribute name
+     * @return every value of the attribute, in header order
+     */
+    public List<String> getAttributeValues(String name) {
+      List<String> values = new ArrayList<>();
+      for (String[] attribute : allAttributes)
+        if (attribute[0].equals(name))
+          values.add(attribute[1]);
+      return values;
+    }
+
+    public Map<String, String> getAttributes() {
+      return attributes;
+    }
+
+    public Map<String, String> getDirectives() {
+      return directives;
+    }
+  }
+
+  private OsgiHeaders() {
+  }
+
+  /**
+   * @param header the header value (may be null)
+   * @return the clauses of the header, empty if there is no header
+   */
+  public static List<Clause> parse(String header) {
+    List<Clause> clauses = new ArrayList<>();
+    if (header == null)
+      return clauses;
+    for (String clause : split(header, ',')) {
+      List<String> paths = new ArrayList<>();
+      Map<String, String> attributes = new LinkedHashMap<>();
+      Map<String, String> directives = new LinkedHashMap<>();
+      List<String[]> allAttributes = new ArrayList<>();
+      for (String part : split(clause, ';')) {
+        int offset = indexOfUnquoted(part, '=');
+        if (offset == -1) {
+          if (part.isEmpty() == false)
+            paths.add(part);
+          continue;
+        }
+        String value = unquote(part.substring(offset + 1).trim());
+        if ((offset > 0) && (part.charAt(offset - 1) == ':'))
+          directives.put(part.substring(0, offset - 1).trim(), value);
+        else {
+          String name = part.substring(0, offset).trim();
+          attributes.put(name, value);
+          allAttributes.add(new String[] {name, value});
+        }
+      }
+      if (paths.isEmpty() == false)
+        clauses.add(new Clause(paths, attributes, directives, allAttributes));
+    }
+    return clauses;
+  }
+
+  private static List<String> split(String value, char separator) {
+    List<String> parts = new ArrayList<>();
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"')
+        quoted = !quoted;
+      else if ((c == separator) && (quoted == false)) {
+        parts.add(value.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    parts.add(value.substring(start).trim());
+    return parts;
+  }
+
+  private static int indexOfUnquoted(String value, char c) {
+    boolean quoted = false;
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+      if (ch == '"')
+        quoted = !quoted;
+      else if ((ch == c) && (quoted == false))
+        return i;
+    }
+    return -1;
+  }
+
+  private static String unquote(String value) {
+    if ((value.length() >= 2) && (value.charAt(0) == '"') && (value.charAt(value.length() - 1) == '"'))
+      return value.substring(1, value.length() - 1);
+    return value;
+  }
+}
@@ -0,0 +1,295 @@
+package com.diamondq.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent index from the exported packages of a target to the bundles that export them. The file is memory
+ * mapped and searched in place, so a lookup only touches the few pages it needs, no matter how large the target is.
+ * <p>
+ * The file starts with a header (magic, format, entry count), followed by one record of five string offsets
+ * (package, package version, symbolic name, bundle version, path) per entry, sorted by package, and the strings
+ * themselves (an unsigned short length and the UTF-8 bytes). Strings that occur more than once are only stored once.
+ */
+public class PackageIndex {
+
+  private static final int              MAGIC       = 0x4F545049;
+
+  private static final int              FORMAT      = 1;
+
+  private static final int              HEADER_SIZE = 12;
+
+  private static final int              RECORD_SIZE = 20;
+
+  private static final int              ATTEMPTS    = 10;
+
+  private static final long             RETRY_DELAY = 500;
+
+  private static final Comparator<Entry> ORDER      = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      int result = a.packageName.compareTo(b.packageName);
+      if (result == 0)
+        result = VersionRange.compare(b.version, a.version);
+      if (result == 0)
+        result = a.symbolicName.compareTo(b.symbolicName);
+      if (result == 0)
+        result = VersionRange.compare(b.bundleVersion, a.bundleVersion);
+      if (result == 0)
+        result = a.path.compareTo(b.path);
+      return result;
+    }
+  };
+
+  /**
+   * An exported package
+   */
+  public static class Entry {
+
+    public final String packageName;
+
+    public final String version;
+
+    public final String symbolicName;
+
+    public final String bundleVersion;
+
+    public final String path;
+
+    public Entry(String packageName, String version, String symbolicName, String bundleVersion, String path) {
+      this.packageName = packageName;
+      this.version = version;
+      this.symbolicName = symbolicName;
+      this.bundleVersion = bundleVersion;
+      this.path = path;
+    }
+
+    @Override
+    public String toString() {
+      return packageName + " " + version + " <- " + symbolicName + " " + bundleVersion + " (" + path + ")";
+    }
+  }
+
+  private final ByteBuffer buffer;
+
+  private final int        count;
+
+  private PackageIndex(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if ((buffer.limit() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != FORMAT))
+      throw new IOException("Not a package index");
+    count = buffer.getInt(8);
+    if ((count < 0) || ((long) HEADER_SIZE + (long) count * RECORD_SIZE > buffer.limit()))
+      throw new IOException("Corrupt package index");
+  }
+
+  /**
+   * Maps an index file into memory
+   *
+   * @param file the index file
+   * @return the index
+   * @throws IOException if the file can't be read or isn't an index
+   */
+  public static PackageIndex open(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      return new PackageIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * @param bytes the contents of an index file
+   * @return the index
+   * @throws IOException if the bytes aren't an index
+   */
+  public static PackageIndex wrap(byte[] bytes) throws IOException {
+    return new PackageIndex(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @param packageName the package name
+   * @return the bundles exporting the package, the highest package version first
+   */
+  public List<Entry> findPackage(String packageName) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (readString(buffer.getInt(HEADER_SIZE + middle * RECORD_SIZE)).compareTo(packageName) < 0)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    List<Entry> entries = new ArrayList<>();
+    for (int i = low; i < count; i++) {
+      Entry entry = getEntry(i);
+      if (entry.packageName.equals(packageName) == false)
+        break;
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  /**
+   * @param className the class name (ie. org.example.Foo, org.example.Foo$Bar or org/example/Foo.class)
+   * @return the bundles exporting the package of the class
+   */
+  public List<Entry> findClass(String className) {
+    String packageName = getPackageName(className);
+    if (packageName == null)
+      return Collections.emptyList();
+    return findPackage(packageName);
+  }
+
+  /**
+   * @param className the class name (ie. org.example.Foo, org.example.Foo$Bar or org/example/Foo.class)
+   * @return the package of the class, or null if the class is in the default package
+   */
+  public static String getPackageName(String className) {
+    String name = className.trim();
+    if (name.endsWith(".class"))
+      name = name.substring(0, name.length() - ".class".length());
+    name = name.replace('/', '.');
+    int offset = name.lastIndexOf('.');
+    return offset <= 0 ? null : name.substring(0, offset);
+  }
+
+  /**
+   * @param index the position of the entry
+   * @return the entry
+   */
+  public Entry getEntry(int index) {
+    int record = HEADER_SIZE + index * RECORD_SIZE;
+    return new Entry(readString(buffer.getInt(record)), readString(buffer.getInt(record + 4)),
+      readString(buffer.getInt(record + 8)), readString(buffer.getInt(record + 12)),
+      readString(buffer.getInt(record + 16)));
+  }
+
+  private String readString(int offset) {
+    int length = buffer.getShort(offset) & 0xFFFF;
+    byte[] bytes = new byte[length];
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset + 2);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param entries the entries, in any order
+   * @return the contents of the index file
+   */
+  public static byte[] render(Collection<Entry> entries) {
+    Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+    Arrays.sort(sorted, ORDER);
+
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    Map<String, Integer> offsets = new HashMap<>();
+    int stringBase = HEADER_SIZE + sorted.length * RECORD_SIZE;
+    ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + sorted.length * RECORD_SIZE);
+    records.putInt(MAGIC).putInt(FORMAT).putInt(sorted.length);
+    try {
+      DataOutputStream stringStream = new DataOutputStream(strings);
+      for (Entry entry : sorted) {
+        for (String value : new String[] {entry.packageName, entry.version, entry.symbolicName, entry.bundleVersion,
+            entry.path}) {
+          Integer offset = offsets.get(value);
+          if (offset == null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF)
+              throw new IllegalArgumentException("The value is too long for the package index: " + value);
+            offset = stringBase + stringStream.size();
+            stringStream.writeShort(bytes.length);
+            stringStream.write(bytes);
+            offsets.put(value, offset);
+          }
+          records.putInt(offset);
+        }
+      }
+      stringStream.flush();
+    }
+    catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+
+    byte[] result = Arrays.copyOf(records.array(), stringBase + strings.size());
+    System.arraycopy(strings.toByteArray(), 0, result, stringBase, strings.size());
+    return result;
+  }
+
+  /**
+   * Writes the index, unless the file already holds exactly the same index
+   *
+   * @param file the index file
+   * @param entries the entries, in any order
+   * @return true if the file was written
+   * @throws IOException if the file can't be written
+   */
+  public static boolean write(File file, Collection<Entry> entries) throws IOException {
+    byte[] content = render(entries);
+    if (file.isFile() && Arrays.equals(content, Files.readAllBytes(file.toPath())))
+      return false;
+    File parent = file.getAbsoluteFile().getParentFile();
+    if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+      throw new IOException("Unable to create " + parent);
+
+    /* Replace the file rather than overwriting it, so a query that starts meanwhile sees either the old or the new
+       index, never a partial one. On POSIX systems a running query keeps its mapping of the old file. Windows refuses
+       to replace a file while it is mapped (with an AccessDeniedException), until the process that maps it releases
+       the mapping, so the move is retried for a while */
+    File temp = new File(parent, file.getName() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp)) {
+      stream.write(content);
+    }
+    for (int attempt = 1;; attempt++) {
+      try {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+        return true;
+      }
+      catch (AtomicMoveNotSupportedException ex) {
+        Files.deleteIfExists(temp.toPath());
+        throw ex;
+      }
+      catch (FileSystemException ex) {
+        if (attempt >= ATTEMPTS) {
+          Files.deleteIfExists(temp.toPath());
+          throw new IOException("Unable to replace " + file + ", it is probably still in use by a query ("
+            + ex.getMessage() + ")", ex);
+        }
+        try {
+          Thread.sleep(RETRY_DELAY);
+        }
+        catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          Files.deleteIfExists(temp.toPath());
+          throw new IOException("Interrupted while replacing " + file, interrupted);
+        }
+      }
+    }
+  }
+}
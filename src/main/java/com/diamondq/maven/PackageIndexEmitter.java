@@ -0,0 +1,121 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.Attributes;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writes the {@link PackageIndex} of the target, that the <code>which-bundle</code> goal queries. The exports of a
+ * bundle are cached by the size and modification time of its file, so only new or changed bundles have their manifest
+ * read, and the index file is only replaced when its contents change.
+ */
+public class PackageIndexEmitter implements TargetEmitter {
+
+  private static final String  NOT_A_BUNDLE = "-";
+
+  private final File           indexFile;
+
+  private final FileStampCache cache;
+
+  private final int            threads;
+
+  /**
+   * @param indexFile the index file
+   * @param cache the cache of the exports of each bundle
+   * @param threads the number of threads to read manifests with
+   */
+  public PackageIndexEmitter(File indexFile, FileStampCache cache, int threads) {
+    this.indexFile = indexFile;
+    this.cache = cache;
+    this.threads = threads;
+  }
+
+  @Override
+  public String getName() {
+    return "package index";
+  }
+
+  @Override
+  public void emit(final ResolvedTarget target, Log log) throws MojoExecutionException {
+    Set<Artifact> artifacts = new LinkedHashSet<>();
+    for (Artifact artifact : target.getArtifacts())
+      if ((artifact.getFile() != null) && artifact.getFile().exists())
+        artifacts.add(artifact);
+
+    List<Callable<List<PackageIndex.Entry>>> tasks = new ArrayList<>();
+    for (final Artifact artifact : artifacts) {
+      tasks.add(new Callable<List<PackageIndex.Entry>>() {
+        @Override
+        public List<PackageIndex.Entry> call() throws IOException {
+          File file = artifact.getFile();
+
+          /* The stamp of a directory doesn't change with its manifest, but reading that manifest is cheap anyway */
+          String exports = file.isFile() ? cache.get(file) : null;
+          if (exports == null) {
+            exports = describe(target.getManifest(artifact));
+            if (file.isFile())
+              cache.put(file, exports);
+          }
+          return parse(exports, file.getAbsolutePath());
+        }
+      });
+    }
+    List<PackageIndex.Entry> entries = new ArrayList<>();
+    for (List<PackageIndex.Entry> exports : ParallelTasks.run(ParallelTasks.getThreadCount(threads), tasks))
+      entries.addAll(exports);
+
+    try {
+      cache.save();
+      if (PackageIndex.write(indexFile, entries))
+        log.info("Wrote " + entries.size() + " exported packages to " + indexFile);
+      else
+        log.debug(indexFile + " is unchanged");
+    }
+    catch (IOException | IllegalArgumentException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Describes the exports of a bundle as a single line: the symbolic name and version of the bundle, followed by each
+   * exported package and its version, all separated by spaces
+   *
+   * @param manifest the manifest headers (may be null)
+   * @return the exports
+   */
+  static String describe(Attributes manifest) {
+    String bsn = BundleManifests.getSymbolicName(manifest);
+    if (bsn == null)
+      return NOT_A_BUNDLE;
+    StringBuilder sb = new StringBuilder();
+    sb.append(bsn).append(' ').append(BundleManifests.getVersion(manifest));
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue(ReachabilityPruner.EXPORT_PACKAGE))) {
+      String version = clause.getAttribute("version");
+      if (version == null)
+        version = clause.getAttribute("specification-version");
+      version = version == null ? "0.0.0" : version.trim();
+      for (String packageName : clause.getPaths())
+        sb.append(' ').append(packageName).append(' ').append(version);
+    }
+    return sb.toString();
+  }
+
+  private static List<PackageIndex.Entry> parse(String exports, String path) {
+    List<PackageIndex.Entry> entries = new ArrayList<>();
+    if (NOT_A_BUNDLE.equals(exports))
+      return entries;
+    String[] parts = exports.split(" ");
+    for (int i = 2; i + 1 < parts.length; i += 2)
+      entries.add(new PackageIndex.Entry(parts[i], parts[i + 1], parts[0], parts[1], path));
+    return entries;
+  }
+}
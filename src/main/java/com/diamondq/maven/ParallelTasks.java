@@ -0,0 +1,82 @@
+package com.diamondq.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Runs the per bundle work of the mojos (extracting, scanning, hashing) on a bounded pool of threads
+ */
+public final class ParallelTasks {
+
+  private ParallelTasks() {
+  }
+
+  /**
+   * @param configured the configured number of threads (0 or less means one per processor)
+   * @return the number of threads to use
+   */
+  public static int getThreadCount(int configured) {
+    if (configured > 0)
+      return configured;
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Runs all the tasks and waits for them to complete.
+   *
+   * @param threads the maximum number of threads
+   * @param tasks the tasks
+   * @return the results of the tasks, in the same order as the tasks
+   * @throws MojoExecutionException if any of the tasks failed
+   */
+  public static <T> List<T> run(int threads, List<? extends Callable<T>> tasks) throws MojoExecutionException {
+    List<T> results = new ArrayList<>(tasks.size());
+    if ((threads <= 1) || (tasks.size() <= 1)) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        }
+        catch (Exception ex) {
+          throw toMojoException(ex);
+        }
+      }
+      return results;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+    try {
+      List<Future<T>> futures = new ArrayList<>(tasks.size());
+      for (Callable<T> task : tasks)
+        futures.add(executor.submit(task));
+      for (Future<T> future : futures) {
+        try {
+          results.add(future.get());
+        }
+        catch (ExecutionException ex) {
+          throw toMojoException(ex.getCause());
+        }
+      }
+      return results;
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while waiting for tasks", ex);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static MojoExecutionException toMojoException(Throwable ex) {
+    if (ex instanceof MojoExecutionException)
+      return (MojoExecutionException) ex;
+    return new MojoExecutionException(ex.getMessage(), ex);
+  }
+}
@@ -0,0 +1,132 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Writes the Eclipse PDE .target file, with one Directory location per artifact. If the target is layered, the
+ * artifacts of the base are left out, and the base target is referenced with a Target location instead. The os/ws/arch
+ * the target was built for is recorded in its environment.
+ */
+public class PdeTargetEmitter extends AbstractFileEmitter {
+
+  private static final Pattern    SEQUENCE_NUMBER = Pattern.compile("<target [^>]*sequenceNumber=\"(\\d+)\"");
+
+  private final TargetLayers      layers;
+
+  private final File              baseTargetFile;
+
+  private final TargetEnvironment environment;
+
+  /**
+   * @param outputFile the target file, or null to write to the log
+   * @param appendOutput true to append to the file instead of replacing it
+   */
+  public PdeTargetEmitter(File outputFile, boolean appendOutput) {
+    this(outputFile, appendOutput, null, null, null);
+  }
+
+  /**
+   * @param outputFile the target file, or null to write to the log
+   * @param appendOutput true to append to the file instead of replacing it
+   * @param layers the rules that decide which artifacts are in the base target (or null if the target isn't layered)
+   * @param baseTargetFile the base target to reference (or null if the target isn't layered)
+   * @param environment the environment of the target (or null if it is built for any platform)
+   */
+  public PdeTargetEmitter(File outputFile, boolean appendOutput, TargetLayers layers, File baseTargetFile,
+    TargetEnvironment environment) {
+    super(outputFile, appendOutput);
+    this.layers = layers;
+    this.baseTargetFile = baseTargetFile;
+    this.environment = environment;
+  }
+
+  /**
+   * @param targetFile the target file
+   * @return the sequence number of an existing target file, or 0 if there is none
+   */
+  public static int readSequenceNumber(File targetFile) {
+    if ((targetFile == null) || (targetFile.isFile() == false))
+      return 0;
+    try {
+      Matcher matcher = SEQUENCE_NUMBER.matcher(FileUtils.fileRead(targetFile));
+      return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+    catch (IOException | NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "PDE target";
+  }
+
+  @Override
+  protected String render(ResolvedTarget target, Log log) throws MojoExecutionException {
+    return render(target.getName(), target.getSequenceNumber(), getLocations(target));
+  }
+
+  /**
+   * @param target the resolved target
+   * @return the directories of the artifacts that are in this target, in target order
+   */
+  protected Collection<File> getLocations(ResolvedTarget target) {
+    if (layers == null)
+      return target.getLocations().values();
+    Collection<File> locations = new ArrayList<>();
+    for (Map.Entry<Artifact, File> entry : target.getLocations().entrySet())
+      if (layers.isBase(entry.getKey()) == false)
+        locations.add(entry.getValue());
+    return locations;
+  }
+
+  protected String render(String name, int sequenceNumber, Collection<File> locations) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+    sb.append("<target name=\"");
+    sb.append(escapeXml(name));
+    sb.append("\" sequenceNumber=\"");
+    sb.append(sequenceNumber);
+    sb.append("\">\n");
+    sb.append("<locations>\n");
+    if (baseTargetFile != null) {
+      sb.append("\t<location type=\"Target\" uri=\"");
+      sb.append(escapeXml(baseTargetFile.getAbsoluteFile().toURI().toString()));
+      sb.append("\"/>\n");
+    }
+    for (File location : locations) {
+      sb.append("\t<location path=\"");
+      sb.append(escapeXml(location.getAbsolutePath()));
+      sb.append("\" type=\"Directory\"/>\n");
+    }
+    sb.append("</locations>\n");
+    if ((environment != null) && (environment.isEmpty() == false)) {
+      sb.append("<environment>\n");
+      appendElement(sb, "os", environment.getOs());
+      appendElement(sb, "ws", environment.getWs());
+      appendElement(sb, "arch", environment.getArch());
+      sb.append("</environment>\n");
+    }
+    sb.append("</target>\n");
+    return sb.toString();
+  }
+
+  private static void appendElement(StringBuilder sb, String name, String value) {
+    if (value == null)
+      return;
+    sb.append('\t').append('<').append(name).append('>');
+    sb.append(escapeXml(value));
+    sb.append("</").append(name).append(">\n");
+  }
+}
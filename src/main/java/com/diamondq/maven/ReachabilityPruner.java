@@ -0,0 +1,209 @@
+package com.diamondq.maven;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Calculates which artifacts are needed by a set of root bundles. The Export-Package headers and symbolic names of all
+ * the artifacts are indexed by name first, and then the mandatory Import-Package and Require-Bundle requirements of
+ * the roots are followed until every requirement is either satisfied or can't be satisfied by any artifact. The hosts
+ * and fragments of every included bundle are included as well. A malformed version range is treated as unbounded, so
+ * one broken manifest doesn't fail the build.
+ */
+public class ReachabilityPruner {
+
+  public static final String                    IMPORT_PACKAGE   = "Import-Package";
+
+  public static final String                    EXPORT_PACKAGE   = "Export-Package";
+
+  public static final String                    REQUIRE_BUNDLE   = "Require-Bundle";
+
+  public static final String                    FRAGMENT_HOST    = "Fragment-Host";
+
+  private static class Capability {
+
+    final Artifact artifact;
+
+    final String   version;
+
+    Capability(Artifact artifact, String version) {
+      this.artifact = artifact;
+      this.version = version;
+    }
+  }
+
+  private final Map<Artifact, Attributes>       manifests;
+
+  private final Map<String, List<Capability>>   exports          = new HashMap<>();
+
+  private final Map<String, List<Capability>>   bundles          = new HashMap<>();
+
+  private final Map<String, List<Artifact>>     fragments        = new HashMap<>();
+
+  private final Set<String>                     unresolved       = new TreeSet<>();
+
+  private final Set<String>                     invalid          = new TreeSet<>();
+
+  /**
+   * Indexes the artifacts
+   *
+   * @param manifests the manifest headers of every artifact, in target order. Artifacts that aren't bundles have no
+   *          (null) headers.
+   */
+  public ReachabilityPruner(Map<Artifact, Attributes> manifests) {
+    this.manifests = manifests;
+    for (Map.Entry<Artifact, Attributes> entry : manifests.entrySet()) {
+      Attributes attributes = entry.getValue();
+      String bsn = BundleManifests.getSymbolicName(attributes);
+      if (bsn == null)
+        continue;
+      Artifact artifact = entry.getKey();
+      add(bundles, bsn, new Capability(artifact, BundleManifests.getVersion(attributes)));
+      for (OsgiHeaders.Clause clause : OsgiHeaders.parse(attributes.getValue(EXPORT_PACKAGE))) {
+        String version = clause.getAttribute("version");
+        if (version == null)
+          version = clause.getAttribute("specification-version");
+        for (String pkg : clause.getPaths())
+          add(exports, pkg, new Capability(artifact, version));
+      }
+      List<OsgiHeaders.Clause> host = OsgiHeaders.parse(attributes.getValue(FRAGMENT_HOST));
+      if (host.isEmpty() == false) {
+        String hostBsn = host.get(0).getPaths().get(0);
+        List<Artifact> list = fragments.get(hostBsn);
+        if (list == null) {
+          list = new ArrayList<>();
+          fragments.put(hostBsn, list);
+        }
+        list.add(artifact);
+      }
+    }
+  }
+
+  private static void add(Map<String, List<Capability>> index, String key, Capability capability) {
+    List<Capability> list = index.get(key);
+    if (list == null) {
+      list = new ArrayList<>(1);
+      index.put(key, list);
+    }
+    list.add(capability);
+  }
+
+  /**
+   * @param roots the root artifacts
+   * @return the roots and every artifact they need, in target order
+   */
+  public Set<Artifact> getClosure(Collection<Artifact> roots) {
+    unresolved.clear();
+    invalid.clear();
+    Set<Artifact> included = new LinkedHashSet<>();
+    Deque<Artifact> queue = new ArrayDeque<>();
+    for (Artifact root : roots)
+      if (included.add(root))
+        queue.add(root);
+
+    while (queue.isEmpty() == false) {
+      Artifact artifact = queue.removeFirst();
+      Attributes attributes = manifests.get(artifact);
+      if (attributes == null)
+        continue;
+
+      for (OsgiHeaders.Clause clause : OsgiHeaders.parse(attributes.getValue(IMPORT_PACKAGE))) {
+        if ("optional".equals(clause.getDirective("resolution")))
+          continue;
+        VersionRange range = parse(artifact, IMPORT_PACKAGE, clause.getAttribute("version"));
+        for (String pkg : clause.getPaths())
+          require(exports.get(pkg), range, "package " + pkg, included, queue);
+      }
+
+      for (OsgiHeaders.Clause clause : OsgiHeaders.parse(attributes.getValue(REQUIRE_BUNDLE))) {
+        if ("optional".equals(clause.getDirective("resolution")))
+          continue;
+        VersionRange range = parse(artifact, REQUIRE_BUNDLE, clause.getAttribute("bundle-version"));
+        for (String bsn : clause.getPaths())
+          require(bundles.get(bsn), range, "bundle " + bsn, included, queue);
+      }
+
+      for (OsgiHeaders.Clause clause : OsgiHeaders.parse(attributes.getValue(FRAGMENT_HOST))) {
+        VersionRange range = parse(artifact, FRAGMENT_HOST, clause.getAttribute("bundle-version"));
+        String hostBsn = clause.getPaths().get(0);
+        /* system.bundle is the framework, which is provided by the platform */
+        if ("system.bundle".equals(hostBsn) == false)
+          require(bundles.get(hostBsn), range, "host " + hostBsn, included, queue);
+        break;
+      }
+
+      List<Artifact> hosted = fragments.get(BundleManifests.getSymbolicName(attributes));
+      if (hosted != null)
+        for (Artifact fragment : hosted)
+          if (included.add(fragment))
+            queue.add(fragment);
+    }
+
+    /* Keep the target order */
+    Set<Artifact> result = new LinkedHashSet<>();
+    for (Artifact artifact : manifests.keySet())
+      if (included.contains(artifact))
+        result.add(artifact);
+    for (Artifact artifact : included)
+      result.add(artifact);
+    return result;
+  }
+
+  private VersionRange parse(Artifact artifact, String header, String range) {
+    try {
+      return VersionRange.parse(range);
+    }
+    catch (IllegalArgumentException ex) {
+      invalid.add(artifact + " has an invalid version range in its " + header + ": " + range);
+      return VersionRange.ANY;
+    }
+  }
+
+  private void require(List<Capability> candidates, VersionRange range, String requirement, Set<Artifact> included,
+    Deque<Artifact> queue) {
+    Capability best = null;
+    if (candidates != null) {
+      for (Capability candidate : candidates) {
+        if (range.includes(candidate.version) == false)
+          continue;
+        if (included.contains(candidate.artifact))
+          return;
+        if ((best == null) || (VersionRange.compare(candidate.version, best.version) > 0))
+          best = candidate;
+      }
+    }
+    if (best == null) {
+      unresolved.add(requirement + " " + range);
+      return;
+    }
+    included.add(best.artifact);
+    queue.add(best.artifact);
+  }
+
+  /**
+   * @return the mandatory requirements that no artifact could satisfy (ie. packages of the JRE or the framework), as
+   *         found by the last {@link #getClosure(Collection)}
+   */
+  public Set<String> getUnresolved() {
+    return unresolved;
+  }
+
+  /**
+   * @return the malformed version ranges that were treated as unbounded, as found by the last
+   *         {@link #getClosure(Collection)}
+   */
+  public Set<String> getInvalidRanges() {
+    return invalid;
+  }
+}
@@ -0,0 +1,395 @@
+package com.diamondq.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.jar.Attributes;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Writes an OSGi Repository (R5) index of the bundles of the target, gzipped if the file name ends with
+ * <code>.gz</code>. Each bundle is described by its identity, content, bundle, host, package and service capabilities
+ * and requirements, the execution environment it requires (along with any Provide-Capability and
+ * Require-Capability). The description of a bundle is cached by the size and modification time of its file, so only
+ * new or changed bundles are scanned, and those are scanned in parallel. The cache only keeps the bundles of the last
+ * index, and a malformed version range is indexed as matching every version (with a warning), like the
+ * {@link ReachabilityPruner} treats it.
+ */
+public class RepositoryIndexEmitter implements TargetEmitter {
+
+  private static final String  NAMESPACE    = "http://www.osgi.org/xmlns/repository/v1.0.0";
+
+  private static final String  NOT_A_BUNDLE = "-";
+
+  private static final Pattern INCREMENT    = Pattern.compile("<repository [^>]*increment=\"(\\d+)\"");
+
+  private static final Pattern EE_VERSION   = Pattern.compile("-([0-9]+(\\.[0-9]+)*)(?=/|$)");
+
+  private final File           indexFile;
+
+  private final FileStampCache cache;
+
+  private final int            threads;
+
+  /**
+   * @param indexFile the index file
+   * @param cache the cache of the bundle descriptions
+   * @param threads the number of threads to scan bundles with
+   */
+  public RepositoryIndexEmitter(File indexFile, FileStampCache cache, int threads) {
+    this.indexFile = indexFile;
+    this.cache = cache;
+    this.threads = threads;
+  }
+
+  @Override
+  public String getName() {
+    return "OSGi repository index";
+  }
+
+  @Override
+  public void emit(final ResolvedTarget target, Log log) throws MojoExecutionException {
+    Set<File> files = new LinkedHashSet<>();
+    for (Artifact artifact : target.getArtifacts()) {
+      File file = artifact.getFile();
+      if ((file != null) && file.isFile())
+        files.add(file);
+      else
+        log.debug("Skipping " + artifact + " in the repository index since it isn't packaged");
+    }
+
+    final Set<String> invalid = new ConcurrentSkipListSet<>();
+    List<Callable<String>> tasks = new ArrayList<>();
+    for (final File file : files) {
+      tasks.add(new Callable<String>() {
+        @Override
+        public String call() throws IOException {
+          /* Every line of a description ends with a tag, and values never contain a '>', so the description is cached
+             on a single line, instead of having every line break escaped in the cache file */
+          String resource = cache.get(file);
+          if (resource == null) {
+            resource = describe(file, BundleManifests.read(file), invalid);
+            cache.put(file, resource.isEmpty() ? NOT_A_BUNDLE : resource.replace("\n", ""));
+          }
+          else
+            resource = resource.replace(">", ">\n");
+          return NOT_A_BUNDLE.equals(resource) ? "" : resource;
+        }
+      });
+    }
+    StringBuilder resources = new StringBuilder();
+    for (String resource : ParallelTasks.run(ParallelTasks.getThreadCount(threads), tasks))
+      resources.append(resource);
+    for (String range : invalid)
+      log.warn(range + ", so it matches every version");
+
+    try {
+      cache.retain(files);
+      cache.save();
+      String previous = read();
+      long increment = 0;
+      if (previous != null) {
+        Matcher matcher = INCREMENT.matcher(previous);
+        if (matcher.find())
+          increment = Long.parseLong(matcher.group(1));
+      }
+      String output = render(target.getName(), increment, resources);
+      if (output.equals(previous)) {
+        log.debug(indexFile + " is unchanged");
+        return;
+      }
+      if (previous != null)
+        output = render(target.getName(), increment + 1, resources);
+      write(output);
+      log.info("Wrote " + indexFile);
+    }
+    catch (IOException | NumberFormatException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+  }
+
+  private static String render(String name, long increment, CharSequence resources) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    sb.append("<repository xmlns=\"").append(NAMESPACE).append("\" name=\"")
+      .append(AbstractFileEmitter.escapeXml(name)).append("\" increment=\"").append(increment).append("\">\n");
+    sb.append(resources);
+    sb.append("</repository>\n");
+    return sb.toString();
+  }
+
+  private boolean isGzipped() {
+    return indexFile.getName().endsWith(".gz");
+  }
+
+  private String read() throws IOException {
+    if (indexFile.isFile() == false)
+      return null;
+    try (InputStream stream =
+      isGzipped() ? new GZIPInputStream(new FileInputStream(indexFile)) : new FileInputStream(indexFile)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      IOUtil.copy(stream, bytes);
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+    catch (IOException ex) {
+      /* A corrupt index is just rewritten */
+      return null;
+    }
+  }
+
+  private void write(String output) throws IOException {
+    File parent = indexFile.getAbsoluteFile().getParentFile();
+    if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+      throw new IOException("Unable to create " + parent);
+    try (OutputStream stream =
+      isGzipped() ? new GZIPOutputStream(new FileOutputStream(indexFile)) : new FileOutputStream(indexFile)) {
+      stream.write(output.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Describes a bundle as a repository resource
+   *
+   * @param file the bundle jar
+   * @param manifest the manifest headers of the jar (may be null)
+   * @param invalid receives a message for every malformed version range, which is indexed as matching every version
+   * @return the resource element, or an empty string if the jar isn't a bundle
+   * @throws IOException if the jar can't be read
+   */
+  static String describe(File file, Attributes manifest, Collection<String> invalid) throws IOException {
+    String bsn = BundleManifests.getSymbolicName(manifest);
+    if (bsn == null)
+      return "";
+    String version = BundleManifests.getVersion(manifest);
+    List<OsgiHeaders.Clause> host = OsgiHeaders.parse(manifest.getValue(ReachabilityPruner.FRAGMENT_HOST));
+    boolean fragment = host.isEmpty() == false;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("  <resource>\n");
+
+    start(sb, "capability", "osgi.identity");
+    attribute(sb, "osgi.identity", null, bsn);
+    attribute(sb, "type", null, fragment ? "osgi.fragment" : "osgi.bundle");
+    attribute(sb, "version", "Version", version);
+    end(sb, "capability");
+
+    start(sb, "capability", "osgi.content");
+    attribute(sb, "osgi.content", null, Digests.digest(file, "SHA-256"));
+    attribute(sb, "url", null, file.getAbsoluteFile().toURI().toString());
+    attribute(sb, "size", "Long", String.valueOf(file.length()));
+    attribute(sb, "mime", null, "application/vnd.osgi.bundle");
+    end(sb, "capability");
+
+    if (fragment == false) {
+      start(sb, "capability", "osgi.wiring.bundle");
+      attribute(sb, "osgi.wiring.bundle", null, bsn);
+      attribute(sb, "bundle-version", "Version", version);
+      end(sb, "capability");
+      start(sb, "capability", "osgi.wiring.host");
+      attribute(sb, "osgi.wiring.host", null, bsn);
+      attribute(sb, "bundle-version", "Version", version);
+      end(sb, "capability");
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue(ReachabilityPruner.EXPORT_PACKAGE))) {
+      String packageVersion = clause.getAttribute("version");
+      if (packageVersion == null)
+        packageVersion = clause.getAttribute("specification-version");
+      for (String pkg : clause.getPaths()) {
+        start(sb, "capability", "osgi.wiring.package");
+        attribute(sb, "osgi.wiring.package", null, pkg);
+        attribute(sb, "version", "Version", packageVersion == null ? "0.0.0" : packageVersion);
+        attribute(sb, "bundle-symbolic-name", null, bsn);
+        attribute(sb, "bundle-version", "Version", version);
+        for (Map.Entry<String, String> entry : clause.getAttributes().entrySet())
+          if (("version".equals(entry.getKey()) == false) && ("specification-version".equals(entry.getKey()) == false))
+            attribute(sb, entry.getKey(), null, entry.getValue());
+        if (clause.getDirective("uses") != null)
+          directive(sb, "uses", clause.getDirective("uses"));
+        end(sb, "capability");
+      }
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue("Export-Service"))) {
+      for (String service : clause.getPaths()) {
+        start(sb, "capability", "osgi.service");
+        attribute(sb, "objectClass", "List<String>", service);
+        end(sb, "capability");
+      }
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue("Provide-Capability"))) {
+      for (String namespace : clause.getPaths()) {
+        start(sb, "capability", namespace);
+        for (Map.Entry<String, String> entry : clause.getAttributes().entrySet())
+          typedAttribute(sb, entry.getKey(), entry.getValue());
+        for (Map.Entry<String, String> entry : clause.getDirectives().entrySet())
+          directive(sb, entry.getKey(), entry.getValue());
+        end(sb, "capability");
+      }
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue(ReachabilityPruner.IMPORT_PACKAGE))) {
+      String range = parse(file, ReachabilityPruner.IMPORT_PACKAGE, clause.getAttribute("version"), invalid)
+        .toFilter("version");
+      for (String pkg : clause.getPaths())
+        requirement(sb, "osgi.wiring.package", "osgi.wiring.package", pkg, range, clause.getDirective("resolution"));
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue(ReachabilityPruner.REQUIRE_BUNDLE))) {
+      String range = parse(file, ReachabilityPruner.REQUIRE_BUNDLE, clause.getAttribute("bundle-version"), invalid)
+        .toFilter("bundle-version");
+      for (String name : clause.getPaths())
+        requirement(sb, "osgi.wiring.bundle", "osgi.wiring.bundle", name, range, clause.getDirective("resolution"));
+    }
+
+    String environments = getExecutionEnvironmentFilter(manifest.getValue("Bundle-RequiredExecutionEnvironment"));
+    if ((environments.isEmpty() == false) && (requiresCapability(manifest, "osgi.ee") == false)) {
+      start(sb, "requirement", "osgi.ee");
+      directive(sb, "filter", environments);
+      end(sb, "requirement");
+    }
+
+    if (fragment) {
+      OsgiHeaders.Clause clause = host.get(0);
+      String range = parse(file, ReachabilityPruner.FRAGMENT_HOST, clause.getAttribute("bundle-version"), invalid)
+        .toFilter("bundle-version");
+      requirement(sb, "osgi.wiring.host", "osgi.wiring.host", clause.getPaths().get(0), range, null);
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue("Import-Service"))) {
+      for (String service : clause.getPaths()) {
+        start(sb, "requirement", "osgi.service");
+        directive(sb, "filter", "(objectClass=" + LdapFilter.escape(service) + ")");
+        directive(sb, "effective", "active");
+        directive(sb, "resolution", "optional");
+        end(sb, "requirement");
+      }
+    }
+
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue("Require-Capability"))) {
+      for (String namespace : clause.getPaths()) {
+        start(sb, "requirement", namespace);
+        for (Map.Entry<String, String> entry : clause.getAttributes().entrySet())
+          typedAttribute(sb, entry.getKey(), entry.getValue());
+        for (Map.Entry<String, String> entry : clause.getDirectives().entrySet())
+          directive(sb, entry.getKey(), entry.getValue());
+        end(sb, "requirement");
+      }
+    }
+
+    sb.append("  </resource>\n");
+    return sb.toString();
+  }
+
+  /**
+   * Translates a Bundle-RequiredExecutionEnvironment into the filter of an <code>osgi.ee</code> requirement, the way
+   * the OSGi core specification maps them (ie. <code>JavaSE-1.8</code> is <code>osgi.ee=JavaSE</code> with version
+   * 1.8, <code>J2SE</code> is <code>JavaSE</code>, and <code>CDC-1.0/Foundation-1.0</code> is
+   * <code>CDC/Foundation</code>). Any of the environments satisfies the requirement.
+   *
+   * @param header the header (may be null)
+   * @return the filter, or an empty string if the header lists no environment
+   */
+  static String getExecutionEnvironmentFilter(String header) {
+    List<String> filters = new ArrayList<>();
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(header)) {
+      for (String environment : clause.getPaths()) {
+        Matcher matcher = EE_VERSION.matcher(environment);
+        String version = null;
+        while (matcher.find())
+          version = matcher.group(1);
+        String name = EE_VERSION.matcher(environment).replaceAll("");
+        if ("J2SE".equals(name))
+          name = "JavaSE";
+        String filter = "(osgi.ee=" + LdapFilter.escape(name) + ")";
+        filters.add(version == null ? filter : "(&" + filter + "(version=" + version + "))");
+      }
+    }
+    if (filters.size() < 2)
+      return filters.isEmpty() ? "" : filters.get(0);
+    StringBuilder sb = new StringBuilder("(|");
+    for (String filter : filters)
+      sb.append(filter);
+    return sb.append(')').toString();
+  }
+
+  private static VersionRange parse(File file, String header, String range, Collection<String> invalid) {
+    try {
+      return VersionRange.parse(range);
+    }
+    catch (IllegalArgumentException ex) {
+      invalid.add(file.getName() + " has an invalid version range in its " + header + ": " + range);
+      return VersionRange.ANY;
+    }
+  }
+
+  private static boolean requiresCapability(Attributes manifest, String namespace) {
+    for (OsgiHeaders.Clause clause : OsgiHeaders.parse(manifest.getValue("Require-Capability")))
+      if (clause.getPaths().contains(namespace))
+        return true;
+    return false;
+  }
+
+  private static void requirement(StringBuilder sb, String namespace, String attribute, String value, String range,
+    String resolution) {
+    String filter = "(" + attribute + "=" + LdapFilter.escape(value) + ")";
+    if (range.isEmpty() == false)
+      filter = "(&" + filter + range + ")";
+    start(sb, "requirement", namespace);
+    directive(sb, "filter", filter);
+    if ("optional".equals(resolution))
+      directive(sb, "resolution", "optional");
+    end(sb, "requirement");
+  }
+
+  private static void start(StringBuilder sb, String element, String namespace) {
+    sb.append("    <").append(element).append(" namespace=\"").append(AbstractFileEmitter.escapeXml(namespace))
+      .append("\">\n");
+  }
+
+  private static void end(StringBuilder sb, String element) {
+    sb.append("    </").append(element).append(">\n");
+  }
+
+  private static void typedAttribute(StringBuilder sb, String key, String value) {
+    int offset = key.indexOf(':');
+    if (offset == -1)
+      attribute(sb, key, null, value);
+    else
+      attribute(sb, key.substring(0, offset).trim(), key.substring(offset + 1).trim(), value);
+  }
+
+  private static void attribute(StringBuilder sb, String name, String type, String value) {
+    sb.append("      <attribute name=\"").append(AbstractFileEmitter.escapeXml(name)).append('"');
+    if (type != null)
+      sb.append(" type=\"").append(AbstractFileEmitter.escapeXml(type)).append('"');
+    sb.append(" value=\"").append(AbstractFileEmitter.escapeXml(value)).append("\"/>\n");
+  }
+
+  private static void directive(StringBuilder sb, String name, String value) {
+    sb.append("      <directive name=\"").append(AbstractFileEmitter.escapeXml(name)).append("\" value=\"")
+      .append(AbstractFileEmitter.escapeXml(value)).append("\"/>\n");
+  }
+}
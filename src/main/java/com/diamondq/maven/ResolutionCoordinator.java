@@ -0,0 +1,124 @@
+package com.diamondq.maven;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.artifact.resolve.ArtifactResolverException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Coordinates the artifact resolutions of every execution in a build session (ie. the modules of a <code>-T</code>
+ * build). A resolution that is already in flight for the same coordinates and repositories is joined instead of being
+ * started again, and the number of resolutions running at the same time can be capped for the whole session.
+ */
+public class ResolutionCoordinator {
+
+  private static final String                             KEY      = ResolutionCoordinator.class.getName();
+
+  private final ConcurrentMap<String, FutureTask<Artifact>> inFlight = new ConcurrentHashMap<>();
+
+  private final Semaphore                                   permits;
+
+  /**
+   * @param maxConcurrent the maximum number of resolutions running at the same time (0 or less is unlimited)
+   */
+  public ResolutionCoordinator(int maxConcurrent) {
+    this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+  }
+
+  /**
+   * Returns the coordinator of the session, creating it if this is the first execution to ask. The limit of the
+   * first execution applies to the whole session.
+   *
+   * @param session the repository session
+   * @param maxConcurrent the maximum number of resolutions running at the same time (0 or less is unlimited)
+   * @return the coordinator
+   */
+  public static ResolutionCoordinator get(RepositorySystemSession session, int maxConcurrent) {
+    SessionData data = session == null ? null : session.getData();
+    if (data == null)
+      return new ResolutionCoordinator(maxConcurrent);
+    while (true) {
+      Object existing = data.get(KEY);
+      if (existing instanceof ResolutionCoordinator)
+        return (ResolutionCoordinator) existing;
+      if (existing != null) {
+        /* Stored by a different version of the plugin (another class loader), so it can't be shared */
+        return new ResolutionCoordinator(maxConcurrent);
+      }
+      ResolutionCoordinator coordinator = new ResolutionCoordinator(maxConcurrent);
+      if (data.set(KEY, null, coordinator))
+        return coordinator;
+    }
+  }
+
+  /**
+   * Resolves an artifact, or waits for the resolution of the same key that is already running
+   *
+   * @param key the key of the resolution (the coordinates and the repositories)
+   * @param resolution the resolution
+   * @return the resolved artifact
+   * @throws ArtifactResolverException if the resolution failed
+   */
+  public Artifact resolve(String key, final Callable<Artifact> resolution) throws ArtifactResolverException {
+    FutureTask<Artifact> task = new FutureTask<>(new Callable<Artifact>() {
+      @Override
+      public Artifact call() throws Exception {
+        if (permits == null)
+          return resolution.call();
+        permits.acquire();
+        try {
+          return resolution.call();
+        }
+        finally {
+          permits.release();
+        }
+      }
+    });
+    FutureTask<Artifact> existing = inFlight.putIfAbsent(key, task);
+    if (existing == null) {
+      try {
+        task.run();
+      }
+      finally {
+        inFlight.remove(key, task);
+      }
+    }
+    else {
+      task = existing;
+      joined(key);
+    }
+
+    try {
+      return task.get();
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ArtifactResolverException("Interrupted while resolving " + key, ex);
+    }
+    catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof ArtifactResolverException)
+        throw (ArtifactResolverException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new ArtifactResolverException(cause.getMessage(), (Exception) cause);
+    }
+  }
+
+  /**
+   * Called when a caller joins a resolution that is already running, before it waits for the result
+   *
+   * @param key the key of the resolution
+   */
+  protected void joined(String key) {
+  }
+}
@@ -0,0 +1,110 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugins.dependency.utils.DependencyStatusSets;
+
+/**
+ * The result of resolving the dependencies of a target, shared by all the {@link TargetEmitter}s of an execution.
+ */
+public class ResolvedTarget {
+
+  private static final Attributes                 NO_MANIFEST = new Attributes();
+
+  private final String                            name;
+
+  private final DependencyStatusSets              dependencies;
+
+  private final Map<Artifact, File>               locations;
+
+  private final ConcurrentMap<File, Attributes>   manifests   = new ConcurrentHashMap<>();
+
+  private int                                     sequenceNumber = 1;
+
+  /**
+   * @param name the name of the target
+   * @param dependencies the resolved dependencies (including any extra dependencies)
+   * @param locations the directory PDE loads each artifact from, in target order
+   */
+  public ResolvedTarget(String name, DependencyStatusSets dependencies, Map<Artifact, File> locations) {
+    this.name = name;
+    this.dependencies = dependencies;
+    this.locations = Collections.unmodifiableMap(locations);
+  }
+
+  /**
+   * @return the name of the target
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the resolved dependencies
+   */
+  public DependencyStatusSets getDependencies() {
+    return dependencies;
+  }
+
+  /**
+   * @return the artifacts of the target, in target order
+   */
+  public Set<Artifact> getArtifacts() {
+    return locations.keySet();
+  }
+
+  /**
+   * @return the directory PDE loads each artifact from, in target order
+   */
+  public Map<Artifact, File> getLocations() {
+    return locations;
+  }
+
+  /**
+   * @return the sequence number of the target. PDE reloads the target when it changes.
+   */
+  public int getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  /**
+   * @param sequenceNumber the sequence number of the target
+   */
+  public void setSequenceNumber(int sequenceNumber) {
+    this.sequenceNumber = sequenceNumber;
+  }
+
+  /**
+   * Returns the manifest headers of an artifact. The manifest of each artifact is only read once, no matter how many
+   * emitters need it.
+   *
+   * @param artifact the artifact
+   * @return the main attributes of the manifest, or null if the artifact has no (readable) manifest
+   */
+  public Attributes getManifest(Artifact artifact) {
+    File file = artifact.getFile();
+    if (file == null)
+      return null;
+    Attributes attributes = manifests.get(file);
+    if (attributes == null) {
+      try {
+        attributes = BundleManifests.read(file);
+      }
+      catch (IOException ex) {
+        attributes = null;
+      }
+      if (attributes == null)
+        attributes = NO_MANIFEST;
+      manifests.put(file, attributes);
+    }
+    return attributes == NO_MANIFEST ? null : attributes;
+  }
+}
@@ -0,0 +1,124 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Remembers the resolved (timestamped) version and checksum of every snapshot in the target, along with the locations
+ * of the target, so that the target only needs to change (and PDE only needs to reload it) when the bytes of a
+ * snapshot or the locations really change.
+ */
+public class SnapshotTracker {
+
+  /* Can't clash with the keys of the snapshots, which are made of coordinates */
+  private static final String       LOCATIONS_KEY = "#locations";
+
+  private final File                stateFile;
+
+  private final FileStampCache      checksums;
+
+  private final Map<String, String> previous      = new TreeMap<>();
+
+  private final Map<String, String> current       = new TreeMap<>();
+
+  private final boolean             hasPrevious;
+
+  /**
+   * @param stateFile the file the snapshot state is stored in
+   * @param checksums the cache of file checksums
+   */
+  public SnapshotTracker(File stateFile, FileStampCache checksums) {
+    this.stateFile = stateFile;
+    this.checksums = checksums;
+    boolean loaded = false;
+    if (stateFile.isFile()) {
+      Properties properties = new Properties();
+      try (InputStream stream = new FileInputStream(stateFile)) {
+        properties.load(stream);
+        for (String key : properties.stringPropertyNames())
+          previous.put(key, properties.getProperty(key));
+        loaded = true;
+      }
+      catch (IOException | IllegalArgumentException ex) {
+        previous.clear();
+      }
+    }
+    hasPrevious = loaded;
+  }
+
+  /**
+   * Records the state of the snapshots among the artifacts
+   *
+   * @param artifacts the artifacts of the target, with the file that the target actually references for each of them
+   * @throws IOException if a snapshot can't be read
+   */
+  public void record(Map<Artifact, File> artifacts) throws IOException {
+    for (Map.Entry<Artifact, File> entry : artifacts.entrySet()) {
+      Artifact artifact = entry.getKey();
+      File file = entry.getValue();
+      if ((artifact.isSnapshot() == false) || (file == null) || (file.isFile() == false))
+        continue;
+      current.put(getKey(artifact), artifact.getVersion() + " " + Digests.sha1(file, checksums));
+    }
+  }
+
+  /**
+   * Records the locations of the target
+   *
+   * @param locations the location directories, in target order
+   */
+  public void recordLocations(Collection<File> locations) {
+    StringBuilder sb = new StringBuilder();
+    for (File location : locations)
+      sb.append(location.getAbsolutePath()).append('\n');
+    current.put(LOCATIONS_KEY, Digests.sha1(sb.toString()));
+  }
+
+  /**
+   * @return true if a snapshot was added, removed or changed, or the locations changed, since the last recorded state.
+   *         If there is no previous state, this is only false when nothing was recorded at all.
+   */
+  public boolean isChanged() {
+    if (hasPrevious == false)
+      return current.isEmpty() == false;
+    return previous.equals(current) == false;
+  }
+
+  /**
+   * Stores the recorded state
+   *
+   * @throws IOException if the state can't be written
+   */
+  public void save() throws IOException {
+    checksums.save();
+    if (hasPrevious && (previous.equals(current) == true))
+      return;
+    Properties properties = new Properties();
+    properties.putAll(current);
+    File parent = stateFile.getAbsoluteFile().getParentFile();
+    if ((parent.isDirectory() == false) && (parent.mkdirs() == false))
+      throw new IOException("Unable to create " + parent);
+    try (OutputStream stream = new FileOutputStream(stateFile)) {
+      properties.store(stream, "Resolved snapshots of the target");
+    }
+  }
+
+  private static String getKey(Artifact artifact) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(artifact.getGroupId()).append(':').append(artifact.getArtifactId()).append(':')
+      .append(artifact.getBaseVersion()).append(':').append(artifact.getType());
+    if (artifact.getClassifier() != null)
+      sb.append(':').append(artifact.getClassifier());
+    return sb.toString();
+  }
+}
@@ -0,0 +1,26 @@
+package com.diamondq.maven;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writes one output (a PDE target, a bnd run bundle list, a Karaf feature, ...) for the resolved bundles. The
+ * dependencies are resolved once per execution and the same {@link ResolvedTarget} is handed to every emitter, so an
+ * additional output only costs its serialization.
+ */
+public interface TargetEmitter {
+
+  /**
+   * @return a short description of the output, used for logging
+   */
+  public String getName();
+
+  /**
+   * Writes the output
+   *
+   * @param target the resolved target
+   * @param log the log
+   * @throws MojoExecutionException in case of an error.
+   */
+  public void emit(ResolvedTarget target, Log log) throws MojoExecutionException;
+}
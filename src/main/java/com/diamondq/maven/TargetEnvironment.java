@@ -0,0 +1,175 @@
+package com.diamondq.maven;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * The os/ws/arch that a target is built for. Bundles declare the platforms they run on with an
+ * <code>Eclipse-PlatformFilter</code> (ie. <code>(&amp; (osgi.os=win32) (osgi.arch=x86_64))</code>) or with the
+ * osname/processor attributes of their <code>Bundle-NativeCode</code>. Anything that isn't configured matches every
+ * platform.
+ */
+public class TargetEnvironment {
+
+  public static final String ECLIPSE_PLATFORM_FILTER = "Eclipse-PlatformFilter";
+
+  public static final String BUNDLE_NATIVE_CODE      = "Bundle-NativeCode";
+
+  private final String       os;
+
+  private final String       ws;
+
+  private final String       arch;
+
+  /**
+   * @param os the operating system (ie. linux, win32, macosx), or null for any
+   * @param ws the windowing system (ie. gtk, win32, cocoa), or null for any
+   * @param arch the processor architecture (ie. x86_64, aarch64), or null for any
+   */
+  public TargetEnvironment(String os, String ws, String arch) {
+    this.os = StringUtils.isBlank(os) ? null : os.trim();
+    this.ws = StringUtils.isBlank(ws) ? null : ws.trim();
+    this.arch = StringUtils.isBlank(arch) ? null : arch.trim();
+  }
+
+  public String getOs() {
+    return os;
+  }
+
+  public String getWs() {
+    return ws;
+  }
+
+  public String getArch() {
+    return arch;
+  }
+
+  /**
+   * @return true if no part of the environment is configured
+   */
+  public boolean isEmpty() {
+    return (os == null) && (ws == null) && (arch == null);
+  }
+
+  /**
+   * @return the configured parts of the environment, as the osgi.os, osgi.ws and osgi.arch filter properties
+   */
+  public Map<String, String> getProperties() {
+    Map<String, String> properties = new LinkedHashMap<>();
+    if (os != null)
+      properties.put("osgi.os", os);
+    if (ws != null)
+      properties.put("osgi.ws", ws);
+    if (arch != null)
+      properties.put("osgi.arch", arch);
+    return properties;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : getProperties().entrySet()) {
+      if (sb.length() > 0)
+        sb.append(", ");
+      sb.append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param manifest the manifest attributes (may be null)
+   * @return false if the manifest declares that the bundle can't run in this environment
+   * @throws IllegalArgumentException if the Eclipse-PlatformFilter is invalid
+   */
+  public boolean matches(Attributes manifest) {
+    if ((manifest == null) || isEmpty())
+      return true;
+    Map<String, String> properties = getProperties();
+    String filter = manifest.getValue(ECLIPSE_PLATFORM_FILTER);
+    if ((StringUtils.isNotBlank(filter)) && Boolean.FALSE.equals(LdapFilter.evaluate(filter, properties)))
+      return false;
+    return matchesNativeCode(manifest.getValue(BUNDLE_NATIVE_CODE), properties);
+  }
+
+  /**
+   * A Bundle-NativeCode header matches if any of its clauses does, or if it ends with the optional <code>*</code>
+   * clause
+   */
+  private boolean matchesNativeCode(String header, Map<String, String> properties) {
+    List<OsgiHeaders.Clause> clauses = OsgiHeaders.parse(header);
+    if (clauses.isEmpty())
+      return true;
+    for (OsgiHeaders.Clause clause : clauses) {
+      if (clause.getPaths().contains("*"))
+        return true;
+      if ((os != null) && (matchesAlias(os, clause.getAttributeValues("osname"), true) == false))
+        continue;
+      if ((arch != null) && (matchesAlias(arch, clause.getAttributeValues("processor"), false) == false))
+        continue;
+      String selection = clause.getDirective("selection-filter");
+      if (selection == null)
+        selection = clause.getAttribute("selection-filter");
+      if ((selection != null) && Boolean.FALSE.equals(LdapFilter.evaluate(selection, properties)))
+        continue;
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean matchesAlias(String configured, List<String> values, boolean isOs) {
+    if (values.isEmpty())
+      return true;
+    String expected = isOs ? normalizeOs(configured) : normalizeArch(configured);
+    for (String value : values)
+      if (expected.equals(isOs ? normalizeOs(value) : normalizeArch(value)))
+        return true;
+    return false;
+  }
+
+  /**
+   * Maps the OSGi osname aliases (ie. Win32, Windows 10, Mac OS X) onto the Eclipse os names
+   */
+  static String normalizeOs(String value) {
+    String normalized = value.toLowerCase().replaceAll("[^a-z0-9]", "");
+    if (normalized.startsWith("win"))
+      return "win32";
+    if (normalized.equals("macos") || normalized.equals("macosx") || normalized.equals("darwin"))
+      return "macosx";
+    if (normalized.equals("sunos"))
+      return "solaris";
+    return normalized;
+  }
+
+  /**
+   * Maps the OSGi processor aliases (ie. amd64, em64t, i386, arm64) onto the Eclipse arch names
+   */
+  static String normalizeArch(String value) {
+    String normalized = value.toLowerCase().replaceAll("[^a-z0-9]", "");
+    switch (normalized) {
+    case "x8664":
+    case "amd64":
+    case "em64t":
+    case "x64":
+      return "x86_64";
+    case "x86":
+    case "i386":
+    case "i486":
+    case "i586":
+    case "i686":
+    case "pentium":
+      return "x86";
+    case "arm64":
+    case "aarch64":
+      return "aarch64";
+    case "ppc64le":
+    case "ppc64el":
+      return "ppc64le";
+    default:
+      return normalized;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.diamondq.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Decides which artifacts belong to the shared base target, and which ones to the product target that references it.
+ * The rules are comma separated <code>groupId[:artifactId]</code> patterns, where <code>*</code> matches any
+ * characters.
+ */
+public class TargetLayers {
+
+  private final List<Pattern[]> includes;
+
+  private final List<Pattern[]> excludes;
+
+  /**
+   * @param includes the patterns of the base artifacts
+   * @param excludes the patterns of the artifacts that stay in the product target, even if they are included
+   */
+  public TargetLayers(String includes, String excludes) {
+    this.includes = parse(includes);
+    this.excludes = parse(excludes);
+  }
+
+  private static List<Pattern[]> parse(String patterns) {
+    List<Pattern[]> result = new ArrayList<>();
+    if (patterns == null)
+      return result;
+    for (String pattern : StringUtils.split(patterns, ",")) {
+      pattern = pattern.trim();
+      if (pattern.isEmpty())
+        continue;
+      int offset = pattern.indexOf(':');
+      String groupId = offset == -1 ? pattern : pattern.substring(0, offset);
+      String artifactId = offset == -1 ? "*" : pattern.substring(offset + 1);
+      result.add(new Pattern[] {toRegex(groupId), toRegex(artifactId)});
+    }
+    return result;
+  }
+
+  private static Pattern toRegex(String glob) {
+    StringBuilder sb = new StringBuilder();
+    for (String part : glob.split("\\*", -1)) {
+      if (sb.length() > 0)
+        sb.append(".*");
+      sb.append(Pattern.quote(part));
+    }
+    return Pattern.compile(sb.toString());
+  }
+
+  private static boolean matches(List<Pattern[]> patterns, Artifact artifact) {
+    for (Pattern[] pattern : patterns)
+      if (pattern[0].matcher(artifact.getGroupId()).matches() && pattern[1].matcher(artifact.getArtifactId()).matches())
+        return true;
+    return false;
+  }
+
+  /**
+   * @param artifact the artifact
+   * @return true if the artifact belongs to the base target
+   */
+  public boolean isBase(Artifact artifact) {
+    return matches(includes, artifact) && (matches(excludes, artifact) == false);
+  }
+}
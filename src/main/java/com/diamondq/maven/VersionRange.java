@@ -0,0 +1,130 @@
+package com.diamondq.maven;
+
+/**
+ * An OSGi version range, such as <code>[1.0,2)</code>. A single version (<code>1.0</code>) means that version or any
+ * later one, and a missing range matches every version.
+ */
+public class VersionRange {
+
+  /**
+   * The range that matches every version
+   */
+  public static final VersionRange ANY = new VersionRange("0.0.0", true, null, false);
+
+  private final String             floor;
+
+  private final boolean            floorInclusive;
+
+  private final String             ceiling;
+
+  private final boolean            ceilingInclusive;
+
+  private VersionRange(String floor, boolean floorInclusive, String ceiling, boolean ceilingInclusive) {
+    this.floor = floor;
+    this.floorInclusive = floorInclusive;
+    this.ceiling = ceiling;
+    this.ceilingInclusive = ceilingInclusive;
+  }
+
+  /**
+   * @param range the range (may be null)
+   * @return the range
+   * @throws IllegalArgumentException if the range is invalid
+   */
+  public static VersionRange parse(String range) {
+    if (range == null)
+      return ANY;
+    range = range.trim();
+    if (range.isEmpty())
+      return ANY;
+    char first = range.charAt(0);
+    if ((first != '[') && (first != '('))
+      return new VersionRange(range, true, null, false);
+    char last = range.charAt(range.length() - 1);
+    int comma = range.indexOf(',');
+    if (((last != ']') && (last != ')')) || (comma == -1))
+      throw new IllegalArgumentException("Invalid version range: " + range);
+    return new VersionRange(range.substring(1, comma).trim(), first == '[',
+      range.substring(comma + 1, range.length() - 1).trim(), last == ']');
+  }
+
+  /**
+   * @param version the version (null is 0.0.0)
+   * @return true if the version is in the range
+   */
+  public boolean includes(String version) {
+    int c = compare(version, floor);
+    if ((c < 0) || ((c == 0) && (floorInclusive == false)))
+      return false;
+    if (ceiling == null)
+      return true;
+    c = compare(version, ceiling);
+    return (c < 0) || ((c == 0) && ceilingInclusive);
+  }
+
+  /**
+   * @param attribute the name of the version attribute (ie. <code>version</code> or <code>bundle-version</code>)
+   * @return the LDAP filter expression matching the range, or an empty string if the range matches every version
+   */
+  public String toFilter(String attribute) {
+    StringBuilder sb = new StringBuilder();
+    if (compare(floor, "0.0.0") != 0 || (floorInclusive == false)) {
+      if (floorInclusive)
+        sb.append('(').append(attribute).append(">=").append(floor).append(')');
+      else
+        sb.append("(!(").append(attribute).append("<=").append(floor).append("))");
+    }
+    if (ceiling != null) {
+      if (ceilingInclusive)
+        sb.append('(').append(attribute).append("<=").append(ceiling).append(')');
+      else
+        sb.append("(!(").append(attribute).append(">=").append(ceiling).append("))");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Compares two OSGi versions (major.minor.micro.qualifier). Missing numeric parts are 0, and the qualifiers are
+   * compared as strings.
+   *
+   * @param a the first version (null is 0.0.0)
+   * @param b the second version (null is 0.0.0)
+   * @return a negative number, zero or a positive number if a is lower, equal or higher than b
+   */
+  public static int compare(String a, String b) {
+    String[] pa = split(a);
+    String[] pb = split(b);
+    for (int i = 0; i < 3; i++) {
+      int c = Long.compare(toNumber(pa[i]), toNumber(pb[i]));
+      if (c != 0)
+        return c;
+    }
+    return pa[3].compareTo(pb[3]);
+  }
+
+  private static String[] split(String version) {
+    String[] result = new String[] {"0", "0", "0", ""};
+    if (version == null)
+      return result;
+    String[] parts = version.trim().split("\\.", 4);
+    for (int i = 0; i < parts.length; i++)
+      result[i] = parts[i];
+    return result;
+  }
+
+  private static long toNumber(String value) {
+    try {
+      return Long.parseLong(value.trim());
+    }
+    catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (ceiling == null)
+      return floor;
+    return (floorInclusive ? "[" : "(") + floor + "," + ceiling + (ceilingInclusive ? "]" : ")");
+  }
+}
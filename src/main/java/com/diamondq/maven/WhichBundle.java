@@ -0,0 +1,77 @@
+package com.diamondq.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Goal reports which bundles of the target export a package, or the package of a class. The answer comes from the
+ * package index that <code>build-target</code> writes, so nothing is resolved or scanned.
+ */
+@Mojo(name = "which-bundle", requiresDependencyResolution = ResolutionScope.NONE, threadSafe = true)
+public class WhichBundle extends AbstractMojo {
+
+  static final String DEFAULT_PACKAGE_INDEX_FILE = "${project.build.directory}/osgi-target/packages.idx";
+
+  /**
+   * The package index written by <code>build-target</code>
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "packageIndexFile", defaultValue = DEFAULT_PACKAGE_INDEX_FILE)
+  protected File   packageIndexFile;
+
+  /**
+   * Comma separated list of packages or classes (ie. <code>org.osgi.framework</code>,
+   * <code>org.osgi.framework.BundleContext</code> or <code>org/osgi/framework/BundleContext.class</code>)
+   *
+   * @since 1.1
+   */
+  @Parameter(property = "query", required = true)
+  protected String query;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (packageIndexFile.isFile() == false)
+      throw new MojoFailureException(
+        "There is no package index " + packageIndexFile + ", run the build-target goal first");
+    PackageIndex index;
+    try {
+      index = PackageIndex.open(packageIndexFile);
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException("Unable to read the package index " + packageIndexFile, ex);
+    }
+
+    for (String name : StringUtils.split(query, ",")) {
+      name = name.trim();
+      if (name.isEmpty())
+        continue;
+
+      /* A name is a package if some bundle exports it, and otherwise it is taken to be a class */
+      List<PackageIndex.Entry> entries = index.findPackage(name);
+      String packageName = name;
+      if (entries.isEmpty()) {
+        packageName = PackageIndex.getPackageName(name);
+        if (packageName != null)
+          entries = index.findClass(name);
+      }
+      if (entries.isEmpty()) {
+        getLog().info("No bundle of the target exports " + name);
+        continue;
+      }
+      getLog().info(name + (name.equals(packageName) ? "" : " (package " + packageName + ")") + " is exported by:");
+      for (PackageIndex.Entry entry : entries)
+        getLog().info("  " + entry.symbolicName + " " + entry.bundleVersion + " as version " + entry.version + " ("
+          + entry.path + ")");
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildTargetLazyTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BuildTargetLazy createMojo(String version) throws Exception {
+    MavenProject project = new MavenProject();
+    Dependency dependency = new Dependency();
+    dependency.setGroupId("test");
+    dependency.setArtifactId("a");
+    dependency.setVersion(version);
+    project.getDependencies().add(dependency);
+    BuildTargetLazy mojo = new BuildTargetLazy();
+    ReflectionUtils.setVariableValueInObject(mojo, "project", project);
+    mojo.workDirectory = new File(folder.getRoot(), "work");
+    mojo.outputFile = folder.newFile("test.target");
+    return mojo;
+  }
+
+  @Test
+  public void testUpToDate() throws Exception {
+    BuildTargetLazy mojo = createMojo("1.0");
+    String hash = mojo.getExecutionHash();
+    assertFalse(mojo.isUpToDate(hash));
+    mojo.writeExecutionHash(hash);
+    assertTrue(mojo.isUpToDate(hash));
+
+    /* A different setting (ie. from -D or a profile) changes the hash */
+    mojo.includeScope = "runtime";
+    assertFalse(mojo.isUpToDate(mojo.getExecutionHash()));
+    mojo.includeScope = null;
+    assertTrue(mojo.isUpToDate(mojo.getExecutionHash()));
+
+    /* A missing output is written again, even if nothing else changed */
+    mojo.bndrunFile = new File(folder.getRoot(), "test.bndrun");
+    hash = mojo.getExecutionHash();
+    mojo.writeExecutionHash(hash);
+    assertFalse(mojo.isUpToDate(hash));
+    assertTrue(mojo.bndrunFile.createNewFile());
+    assertTrue(mojo.isUpToDate(hash));
+  }
+
+  @Test
+  public void testVolatileVersions() throws Exception {
+    BuildTargetLazy mojo = createMojo("[1.0,2.0)");
+    String hash = mojo.getExecutionHash();
+    mojo.writeExecutionHash(hash);
+    assertFalse(mojo.isUpToDate(hash));
+    assertTrue(BuildTargetLazy.isVolatile("1.0-SNAPSHOT"));
+    assertTrue(BuildTargetLazy.isVolatile("1.0-20200101.101010-1"));
+    assertFalse(BuildTargetLazy.isVolatile("1.0"));
+  }
+
+  @Test
+  public void testVolatileExtraDeps() throws Exception {
+    BuildTargetLazy mojo = createMojo("1.0");
+    mojo.extraDeps = "test:b:1.0, test:c:1.0-SNAPSHOT:jar";
+    String hash = mojo.getExecutionHash();
+    mojo.writeExecutionHash(hash);
+    assertFalse(mojo.isUpToDate(hash));
+    mojo.extraDeps = "test:b:1.0";
+    hash = mojo.getExecutionHash();
+    mojo.writeExecutionHash(hash);
+    assertTrue(mojo.isUpToDate(hash));
+  }
+
+  @Test
+  public void testVolatileLockedArtifacts() throws Exception {
+    BuildTargetLazy mojo = createMojo("1.0");
+    mojo.lockFile = new File(folder.getRoot(), "target.lock");
+    new LockFile("hash", Arrays.asList(new LockFile.Entry("test", "a", "jar", "", "1.0", "compile", "a.jar", 1, "-"),
+      new LockFile.Entry("test", "b", "jar", "", "1.0-20200101.101010-1", "compile", "b.jar", 1, "-")))
+        .write(mojo.lockFile);
+    String hash = mojo.getExecutionHash();
+    mojo.writeExecutionHash(hash);
+    assertFalse(mojo.isUpToDate(hash));
+
+    /* Without the transitive snapshot, the outputs are kept */
+    new LockFile("hash", Arrays.asList(new LockFile.Entry("test", "a", "jar", "", "1.0", "compile", "a.jar", 1, "-")))
+      .write(mojo.lockFile);
+    assertTrue(mojo.isUpToDate(hash));
+
+    /* A volatile resolution isn't recorded, so the next execution writes the outputs again */
+    mojo.writeExecutionHash(null);
+    assertFalse(mojo.isUpToDate(hash));
+  }
+
+  @Test
+  public void testAllScopesWithoutFilters() throws MojoExecutionException {
+    Collection<String> scopes = BuildTargetLazy.getKeptScopes("", "");
+    assertEquals(Arrays.asList("compile", "provided", "runtime", "system", "test"), new ArrayList<>(scopes));
+  }
+
+  @Test
+  public void testIncludeRuntime() throws MojoExecutionException {
+    assertEquals(Arrays.asList("compile", "runtime"), new ArrayList<>(BuildTargetLazy.getKeptScopes("runtime", "")));
+  }
+
+  @Test
+  public void testIncludeCompileExcludeProvided() throws MojoExecutionException {
+    assertEquals(Arrays.asList("compile", "system"),
+      new ArrayList<>(BuildTargetLazy.getKeptScopes("compile", "provided")));
+  }
+
+  @Test
+  public void testExcludeRuntimeFromRuntime() throws MojoExecutionException {
+    assertTrue(BuildTargetLazy.getKeptScopes("runtime", "runtime").isEmpty());
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testExcludeTest() throws MojoExecutionException {
+    BuildTargetLazy.getKeptScopes("", "test");
+  }
+
+  @Test(expected = MojoExecutionException.class)
+  public void testInvalidScope() throws MojoExecutionException {
+    BuildTargetLazy.getKeptScopes("bogus", "");
+  }
+}
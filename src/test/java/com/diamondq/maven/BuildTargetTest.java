@@ -0,0 +1,419 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.handler.manager.DefaultArtifactHandlerManager;
+import org.apache.maven.artifact.metadata.ArtifactMetadata;
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.artifact.repository.layout.DefaultRepositoryLayout;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.artifact.ArtifactCoordinate;
+import org.apache.maven.shared.repository.RepositoryManager;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
+import org.codehaus.plexus.components.io.resources.PlexusIoResourceCollection;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildTargetTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BuildTarget createMojo() {
+    BuildTarget mojo = new BuildTarget();
+    mojo.workDirectory = new File(folder.getRoot(), "work");
+    return mojo;
+  }
+
+  @Test
+  public void testPinnedSnapshotFollowsTheBytes() throws Exception {
+    BuildTarget mojo = createMojo();
+    File file = new File(folder.newFolder("repo"), "a-1.0-SNAPSHOT.jar");
+    FileUtils.fileWrite(file, "UTF-8", "first");
+
+    /* A locally installed snapshot keeps the same version whatever its bytes */
+    Artifact artifact =
+      new DefaultArtifact("test", "a", "1.0-SNAPSHOT", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    artifact.setFile(file);
+
+    File first = mojo.pinSnapshot(artifact);
+    assertEquals(first, mojo.pinSnapshot(artifact));
+    assertEquals("first", FileUtils.fileRead(new File(first, "a-1.0-SNAPSHOT.jar"), "UTF-8"));
+
+    FileUtils.fileWrite(file, "UTF-8", "second");
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+    File second = mojo.pinSnapshot(artifact);
+    assertNotEquals(first, second);
+    assertEquals("second", FileUtils.fileRead(new File(second, "a-1.0-SNAPSHOT.jar"), "UTF-8"));
+
+    /* The superseded copy is gone */
+    assertFalse(first.exists());
+  }
+
+  @Test
+  public void testReactorOutputIsABundleOfItsLocation() throws Exception {
+    BuildTarget mojo = createMojo();
+    File output = folder.newFolder("module", "target", "classes");
+    assertTrue(new File(output, "META-INF").mkdir());
+    FileUtils.fileWrite(new File(output, "META-INF/MANIFEST.MF"), "UTF-8",
+      "Manifest-Version: 1.0\nBundle-SymbolicName: test.module;singleton:=true\nBundle-Version: 1.0.0.qualifier\n");
+
+    Model model = new Model();
+    model.setGroupId("test");
+    model.setArtifactId("module");
+    model.setVersion("1.0.0-SNAPSHOT");
+    model.setBuild(new Build());
+    model.getBuild().setOutputDirectory(output.getPath());
+    ReflectionUtils.setVariableValueInObject(mojo, "reactorProjects",
+      Collections.singletonList(new MavenProject(model)));
+
+    Artifact artifact =
+      new DefaultArtifact("test", "module", "1.0.0-SNAPSHOT", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    Map<Artifact, File> locations = mojo.getReactorOutputDirectories(Collections.singletonList(artifact));
+
+    /* PDE scans the children of the location, so the output must be one of them */
+    File location = locations.get(artifact);
+    assertNotEquals(output, location);
+    File bundle = new File(location, "test.module_1.0.0.qualifier");
+    assertTrue(new File(bundle, "META-INF/MANIFEST.MF").isFile());
+    assertEquals(1, location.list().length);
+
+    /* The link follows the compilation */
+    FileUtils.fileWrite(new File(output, "A.class"), "UTF-8", "");
+    assertEquals(location, mojo.getReactorOutputDirectories(Collections.singletonList(artifact)).get(artifact));
+    assertTrue(new File(bundle, "A.class").isFile());
+  }
+
+  private BuildTarget createLockingMojo(BuildTarget mojo, File repository) throws Exception {
+    MavenProject project = new MavenProject();
+    Dependency dependency = new Dependency();
+    dependency.setGroupId("test");
+    dependency.setArtifactId("a");
+    dependency.setVersion("1.0");
+    project.getDependencies().add(dependency);
+    ReflectionUtils.setVariableValueInObject(mojo, "project", project);
+
+    DefaultMavenExecutionRequest request = new DefaultMavenExecutionRequest();
+    request.setLocalRepository(new MavenArtifactRepository("local", repository.toURI().toString(),
+      new DefaultRepositoryLayout(), null, null));
+    ReflectionUtils.setVariableValueInObject(mojo, "session",
+      new MavenSession(null, request, new DefaultMavenExecutionResult(), project));
+    DefaultArtifactHandlerManager handlers = new DefaultArtifactHandlerManager();
+    ReflectionUtils.setVariableValueInObject(handlers, "artifactHandlers", new HashMap<String, ArtifactHandler>());
+    ReflectionUtils.setVariableValueInObject(mojo, "artifactHandlerManager", handlers);
+
+    mojo.workDirectory = new File(folder.getRoot(), "work");
+    mojo.lockFile = new File(folder.getRoot(), "target.lock");
+    return mojo;
+  }
+
+  private static Artifact createArtifact(String artifactId, File file) {
+    Artifact artifact =
+      new DefaultArtifact("test", artifactId, "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    artifact.setFile(file);
+    return artifact;
+  }
+
+  @Test
+  public void testLockFileReplay() throws Exception {
+    File repository = folder.newFolder("repository");
+    BuildTarget mojo = createLockingMojo(createMojo(), repository);
+    File jar = new File(repository, "test/a/1.0/a-1.0.jar");
+    assertTrue(jar.getParentFile().mkdirs());
+    FileUtils.fileWrite(jar, "UTF-8", "a");
+    File classes = folder.newFolder("b", "target", "classes");
+    List<Artifact> artifacts = Arrays.asList(createArtifact("a", jar), createArtifact("b", classes));
+
+    String hash = mojo.getResolutionHash();
+    mojo.writeLockFile(hash, artifacts);
+    assertEquals("test/a/1.0/a-1.0.jar", LockFile.read(mojo.lockFile).getEntries().get(0).path);
+
+    /* Both the file and the directory are replayed */
+    ResolvedTarget replayed = mojo.replayLockFile(hash);
+    assertNotNull(replayed);
+    assertEquals(artifacts, Arrays.asList(replayed.getArtifacts().toArray()));
+    assertEquals(jar, replayed.getArtifacts().iterator().next().getFile());
+
+    /* The other goal replays the same lock file */
+    BuildTarget lazy = createLockingMojo(new BuildTargetLazy(), repository);
+    assertEquals(hash, lazy.getResolutionHash());
+
+    /* A different setting doesn't */
+    mojo.includeScope = "runtime";
+    assertNotEquals(hash, mojo.getResolutionHash());
+    assertNull(mojo.replayLockFile(mojo.getResolutionHash()));
+    mojo.includeScope = null;
+  }
+
+  @Test
+  public void testLockFileIsOnlyReplayedWhileTheFilesAreUnchanged() throws Exception {
+    File repository = folder.newFolder("repository");
+    BuildTarget mojo = createLockingMojo(createMojo(), repository);
+    File jar = new File(repository, "test/a/1.0/a-1.0.jar");
+    assertTrue(jar.getParentFile().mkdirs());
+    FileUtils.fileWrite(jar, "UTF-8", "a");
+    File classes = folder.newFolder("b", "target", "classes");
+    String hash = mojo.getResolutionHash();
+    mojo.writeLockFile(hash, Arrays.asList(createArtifact("a", jar), createArtifact("b", classes)));
+    assertNotNull(mojo.replayLockFile(hash));
+
+    /* A changed size */
+    FileUtils.fileWrite(jar, "UTF-8", "ab");
+    assertNull(mojo.replayLockFile(hash));
+
+    /* A missing file (which has a length of 0, like an empty locked file) */
+    FileUtils.fileWrite(jar, "UTF-8", "");
+    mojo.writeLockFile(hash, Arrays.asList(createArtifact("a", jar), createArtifact("b", classes)));
+    assertNotNull(mojo.replayLockFile(hash));
+    assertTrue(jar.delete());
+    assertNull(mojo.replayLockFile(hash));
+
+    /* A missing directory */
+    FileUtils.fileWrite(jar, "UTF-8", "");
+    assertNotNull(mojo.replayLockFile(hash));
+    FileUtils.deleteDirectory(classes);
+    assertNull(mojo.replayLockFile(hash));
+  }
+
+  @Test
+  public void testUnresolvedArtifactIsNotLocked() throws Exception {
+    BuildTarget mojo = createLockingMojo(createMojo(), folder.newFolder("repository"));
+    File jar = folder.newFile("a-1.0.jar");
+    String hash = mojo.getResolutionHash();
+    mojo.writeLockFile(hash, Arrays.asList(createArtifact("a", jar)));
+    assertTrue(mojo.lockFile.isFile());
+
+    /* A replay would lose the artifact, so the stale lock file is removed */
+    mojo.writeLockFile(hash, Arrays.asList(createArtifact("a", jar), createArtifact("b", null)));
+    assertFalse(mojo.lockFile.exists());
+    assertNull(mojo.replayLockFile(hash));
+  }
+
+  @Test
+  public void testExtraDepsFromTheLocalRepository() throws Exception {
+    final File repository = folder.newFolder("repository");
+    final List<String> resolved = new ArrayList<>();
+    BuildTarget mojo = createLockingMojo(new BuildTarget() {
+      @Override
+      protected Artifact resolveArtifact(ProjectBuildingRequest buildingRequest, ArtifactCoordinate coordinate) {
+        resolved.add(coordinate.getArtifactId());
+        Artifact artifact = createArtifact(coordinate.getArtifactId(), new File(repository, "resolved.jar"));
+        artifact.setResolved(true);
+        return artifact;
+      }
+    }, repository);
+    ReflectionUtils.setVariableValueInObject(mojo, "repositoryManager", new RepositoryManager() {
+      @Override
+      public String getPathForLocalArtifact(ProjectBuildingRequest buildingRequest, ArtifactCoordinate coordinate) {
+        return coordinate.getGroupId() + "/" + coordinate.getArtifactId() + "/" + coordinate.getVersion() + "/"
+          + coordinate.getArtifactId() + "-" + coordinate.getVersion() + "." + coordinate.getExtension();
+      }
+
+      @Override
+      public String getPathForLocalArtifact(ProjectBuildingRequest buildingRequest, Artifact artifact) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public String getPathForLocalMetadata(ProjectBuildingRequest buildingRequest, ArtifactMetadata metadata) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public ProjectBuildingRequest setLocalRepositoryBasedir(ProjectBuildingRequest buildingRequest, File basedir) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public File getLocalRepositoryBasedir(ProjectBuildingRequest buildingRequest) {
+        return repository;
+      }
+    });
+
+    /* Every version but the missing one (b) is in the local repository */
+    for (String path : new String[] {"test/a/1.0/a-1.0.jar", "test/c/1.0-SNAPSHOT/c-1.0-SNAPSHOT.jar",
+        "test/d/[1.0]/d-[1.0].jar"}) {
+      File file = new File(repository, path);
+      assertTrue(file.getParentFile().mkdirs());
+      FileUtils.fileWrite(file, "UTF-8", path);
+    }
+    mojo.extraDeps = "test:a:1.0,test:b:1.0,test:c:1.0-SNAPSHOT,test:d:[1.0]";
+    List<Artifact> artifacts = new ArrayList<>(mojo.resolveExtraDeps());
+
+    /* Only the release that is already there skips the resolver, a snapshot or a range may resolve to another file */
+    assertEquals(Arrays.asList("b", "c", "d"), resolved);
+    assertEquals(4, artifacts.size());
+    assertEquals(new File(repository, "test/a/1.0/a-1.0.jar"), artifacts.get(0).getFile());
+    assertTrue(artifacts.get(0).isResolved());
+    assertEquals(new File(repository, "resolved.jar"), artifacts.get(1).getFile());
+  }
+
+  @Test
+  public void testPinnedSnapshotIsNamedAfterTheResolvedVersion() throws Exception {
+    BuildTarget mojo = createMojo();
+    File repository = folder.newFolder("repo");
+    File first = new File(repository, "a-1.0-20200101.101010-1.jar");
+    FileUtils.fileWrite(first, "UTF-8", "first");
+    Artifact artifact = new DefaultArtifact("test", "a", "1.0-20200101.101010-1", "compile", "jar", null,
+      new DefaultArtifactHandler("jar"));
+    artifact.setFile(first);
+    File firstPin = mojo.pinSnapshot(artifact);
+    assertTrue(new File(firstPin, "a-1.0-20200101.101010-1.jar").isFile());
+
+    /* The copy isn't refreshed, unless overWriteSnapshots is set */
+    FileUtils.fileWrite(new File(firstPin, "a-1.0-20200101.101010-1.jar"), "UTF-8", "damaged");
+    mojo.pinSnapshot(artifact);
+    assertEquals("damaged", FileUtils.fileRead(new File(firstPin, "a-1.0-20200101.101010-1.jar"), "UTF-8"));
+    mojo.overWriteSnapshots = true;
+    mojo.pinSnapshot(artifact);
+    assertEquals("first", FileUtils.fileRead(new File(firstPin, "a-1.0-20200101.101010-1.jar"), "UTF-8"));
+
+    /* The next deployed build supersedes the copy of the first one */
+    File second = new File(repository, "a-1.0-20200102.101010-2.jar");
+    FileUtils.fileWrite(second, "UTF-8", "second");
+    Artifact next = new DefaultArtifact("test", "a", "1.0-20200102.101010-2", "compile", "jar", null,
+      new DefaultArtifactHandler("jar"));
+    next.setFile(second);
+    File secondPin = mojo.pinSnapshot(next);
+    assertTrue(new File(secondPin, "a-1.0-20200102.101010-2.jar").isFile());
+    assertFalse(firstPin.exists());
+  }
+
+  @Test
+  public void testSnapshotStateIsKeptPerOutputFile() throws Exception {
+    BuildTarget first = createMojo();
+    first.outputFile = new File(folder.getRoot(), "first.target");
+    BuildTarget second = createMojo();
+    second.outputFile = new File(folder.getRoot(), "second.target");
+    assertNotEquals(first.getSnapshotStateFile(), second.getSnapshotStateFile());
+    FileStampCache checksums = new FileStampCache(new File(folder.getRoot(), "checksums.properties"));
+
+    /* Two executions that share the work directory, with different locations, run one after the other */
+    for (int i = 0; i < 2; i++) {
+      for (BuildTarget mojo : new BuildTarget[] {first, second}) {
+        SnapshotTracker tracker = new SnapshotTracker(mojo.getSnapshotStateFile(), checksums);
+        tracker.recordLocations(Collections.singletonList(new File(mojo.outputFile.getPath() + ".location")));
+        assertEquals(i == 0, tracker.isChanged());
+        tracker.save();
+      }
+    }
+  }
+
+  private static void writeBundle(File file, String shape, String contents) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue("Bundle-SymbolicName", "test.launcher;singleton:=true");
+    manifest.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+    if (shape != null)
+      manifest.getMainAttributes().putValue("Eclipse-BundleShape", shape);
+    try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(file), manifest)) {
+      stream.putNextEntry(new ZipEntry("launcher.txt"));
+      stream.write(contents.getBytes("UTF-8"));
+      stream.closeEntry();
+    }
+  }
+
+  @Test
+  public void testExtractDirectoryBundles() throws Exception {
+    BuildTarget mojo = createMojo();
+    mojo.bundleCacheDirectory = new File(folder.getRoot(), "bundles");
+    mojo.setArchiverManager(new ArchiverManager() {
+      @Override
+      public Archiver getArchiver(String archiverName) {
+        return null;
+      }
+
+      @Override
+      public Archiver getArchiver(File file) {
+        return null;
+      }
+
+      @Override
+      public UnArchiver getUnArchiver(String unArchiverName) {
+        ZipUnArchiver unArchiver = new ZipUnArchiver();
+        unArchiver.enableLogging(new ConsoleLogger(Logger.LEVEL_DISABLED, "test"));
+        return unArchiver;
+      }
+
+      @Override
+      public UnArchiver getUnArchiver(File file) {
+        return getUnArchiver(file.getName());
+      }
+
+      @Override
+      public PlexusIoResourceCollection getResourceCollection(File file) {
+        return null;
+      }
+
+      @Override
+      public PlexusIoResourceCollection getResourceCollection(String unArchiverName) {
+        return null;
+      }
+    });
+    File repository = folder.newFolder("repo");
+    File launcher = new File(repository, "launcher-1.0.jar");
+    writeBundle(launcher, "dir", "first");
+    Artifact directory = createArtifact("launcher", launcher);
+    File plain = new File(repository, "plain-1.0.jar");
+    writeBundle(plain, null, "plain");
+    Artifact jar = createArtifact("plain", plain);
+
+    Map<Artifact, File> locations = mojo.extractDirectoryBundles(Arrays.asList(directory, jar));
+    assertEquals(Collections.singleton(directory), locations.keySet());
+    File location = locations.get(directory);
+    assertEquals(new File(mojo.bundleCacheDirectory, Digests.sha1(launcher)), location);
+    File extracted = new File(location, "test.launcher_1.0.0/launcher.txt");
+    assertEquals("first", FileUtils.fileRead(extracted, "UTF-8"));
+
+    /* An unchanged jar isn't extracted again */
+    assertTrue(extracted.delete());
+    assertEquals(location, mojo.extractDirectoryBundles(Arrays.asList(directory, jar)).get(directory));
+    assertFalse(extracted.exists());
+
+    /* A new build of the jar gets a new directory, and the old one is removed */
+    writeBundle(launcher, "dir", "second");
+    assertTrue(launcher.setLastModified(launcher.lastModified() + 2000));
+    File next = mojo.extractDirectoryBundles(Arrays.asList(directory, jar)).get(directory);
+    assertNotEquals(location, next);
+    assertEquals("second", FileUtils.fileRead(new File(next, "test.launcher_1.0.0/launcher.txt"), "UTF-8"));
+    assertFalse(location.exists());
+  }
+}
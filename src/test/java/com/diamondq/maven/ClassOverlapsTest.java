@@ -0,0 +1,65 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassOverlapsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File jar(String name, String... entries) throws IOException {
+    File file = folder.newFile(name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void testHashMap() {
+    LongIntHashMap map = new LongIntHashMap(1);
+    for (int i = 0; i < 100000; i++)
+      assertEquals(-1, map.putIfAbsent(LongIntHashMap.hash("name" + i), i));
+    assertEquals(100000, map.size());
+    for (int i = 0; i < 100000; i += 997)
+      assertEquals(i, map.get(LongIntHashMap.hash("name" + i)));
+    assertEquals(5, map.putIfAbsent(LongIntHashMap.hash("name5"), 7));
+    assertEquals(-1, map.get(LongIntHashMap.hash("missing")));
+    assertEquals(-1, map.putIfAbsent(0, 3));
+    assertEquals(3, map.get(0));
+  }
+
+  @Test
+  public void testOverlaps() throws IOException, MojoExecutionException {
+    File a = jar("a.jar", "p/A.class", "p/B.class", "q/Q.class", "module-info.class", "META-INF/versions/9/p/A.class");
+    File b = jar("b.jar", "p/B.class", "p/C.class", "module-info.class", "p/package-info.class");
+    File host = jar("host.jar", "r/R.class");
+    File fragment = jar("fragment.jar", "r/R.class", "r/S.class");
+
+    ClassOverlaps overlaps = ClassOverlaps.scan(Arrays.asList(a, b, host, fragment), new int[] {0, 1, 2, 2}, 2);
+    assertEquals(8, overlaps.getClassCount());
+    assertEquals(Collections.singleton("p"), overlaps.getSplitPackages().keySet());
+    assertEquals(new TreeSet<>(Arrays.asList(0, 1)), overlaps.getSplitPackages().get("p"));
+    assertEquals(Collections.singleton("p.B"), overlaps.getDuplicateClasses().keySet());
+    assertTrue(ClassOverlaps.groupByOwners(overlaps.getDuplicateClasses())
+      .containsKey(new TreeSet<>(Arrays.asList(0, 1))));
+  }
+}
@@ -0,0 +1,50 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassVersionsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] header(int major) {
+    return new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, (byte) major};
+  }
+
+  @Test
+  public void testMaxMajorVersion() throws IOException {
+    File jar = folder.newFile("test.jar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+      String[] names = new String[] {"a/A.class", "a/B.class", "module-info.class", "META-INF/versions/17/a/A.class",
+          "a/readme.txt"};
+      int[] majors = new int[] {52, 55, 61, 61, 99};
+      for (int i = 0; i < names.length; i++) {
+        out.putNextEntry(new ZipEntry(names[i]));
+        out.write(header(majors[i]));
+        out.closeEntry();
+      }
+    }
+    assertEquals(55, ClassVersions.getMaxMajorVersion(jar));
+    assertEquals(0, ClassVersions.getMaxMajorVersion(folder.newFolder("empty")));
+    assertEquals("Java 11", ClassVersions.describe(55));
+  }
+
+  @Test
+  public void testExecutionEnvironments() {
+    assertEquals(52, ClassVersions.getMaxMajorVersion("JavaSE-1.8"));
+    assertEquals(55, ClassVersions.getMaxMajorVersion("JavaSE-11, JavaSE-17"));
+    assertEquals(49, ClassVersions.getMaxMajorVersion("OSGi/Minimum-1.2,J2SE-1.5"));
+    assertEquals(0, ClassVersions.getMaxMajorVersion("CDC-1.0/Foundation-1.0"));
+    assertEquals(0, ClassVersions.getMaxMajorVersion((String) null));
+  }
+}
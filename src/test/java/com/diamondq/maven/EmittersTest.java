@@ -0,0 +1,285 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugins.dependency.utils.DependencyStatusSets;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EmittersTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Artifact createArtifact(String artifactId, String symbolicName) throws IOException {
+    Artifact artifact = new DefaultArtifact("test", artifactId, "1.0", "compile", "jar", null,
+      new DefaultArtifactHandler("jar"));
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (symbolicName != null) {
+      manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+      manifest.getMainAttributes().putValue("Bundle-Version", "1.0.0.v1");
+    }
+    File dir = folder.newFolder(artifactId);
+    File file = new File(dir, artifactId + "-1.0.jar");
+    new JarOutputStream(new FileOutputStream(file), manifest).close();
+    artifact.setFile(file);
+    return artifact;
+  }
+
+  private ResolvedTarget createTarget() throws IOException {
+    Map<Artifact, File> locations = new LinkedHashMap<>();
+    for (Artifact artifact : new Artifact[] {createArtifact("a", "test.a;singleton:=true"),
+        createArtifact("b", null)})
+      locations.put(artifact, artifact.getFile().getParentFile());
+    return new ResolvedTarget("Test", new DependencyStatusSets(), locations);
+  }
+
+  @Test
+  public void testPdeTarget() throws IOException, MojoExecutionException {
+    ResolvedTarget target = createTarget();
+    String output = new PdeTargetEmitter(null, false).render(target, new SystemStreamLog());
+    assertTrue(output.contains("<target name=\"Test\" sequenceNumber=\"1\">"));
+    assertTrue(output.contains("<location path=\"" + new File(folder.getRoot(), "b").getAbsolutePath()
+      + "\" type=\"Directory\"/>"));
+  }
+
+  @Test
+  public void testPdeTargetEscaping() throws IOException, MojoExecutionException {
+    Artifact artifact = createArtifact("a&\"b", "test.a");
+    Map<Artifact, File> locations = new LinkedHashMap<>();
+    locations.put(artifact, artifact.getFile().getParentFile());
+    ResolvedTarget target = new ResolvedTarget("R&D \"Test\"", new DependencyStatusSets(), locations);
+    String output = new PdeTargetEmitter(null, false).render(target, new SystemStreamLog());
+    assertTrue(output.contains("<target name=\"R&amp;D &quot;Test&quot;\""));
+    assertTrue(output.contains(
+      "<location path=\"" + new File(folder.getRoot(), "a&amp;&quot;b").getAbsolutePath() + "\" type=\"Directory\"/>"));
+  }
+
+  @Test
+  public void testPdeTargetEnvironment() throws IOException, MojoExecutionException {
+    String output = new PdeTargetEmitter(null, false, null, null, new TargetEnvironment("linux", null, "x86_64"))
+      .render(createTarget(), new SystemStreamLog());
+    assertTrue(
+      output.contains("</locations>\n<environment>\n\t<os>linux</os>\n\t<arch>x86_64</arch>\n</environment>\n"));
+  }
+
+  @Test
+  public void testBndrun() throws IOException, MojoExecutionException {
+    String output = new BndrunEmitter(null).render(createTarget(), new SystemStreamLog());
+    assertEquals("# Generated from the dependencies of Test\n-runbundles: test.a;version='[1.0.0.v1,1.0.0.v1]'\n",
+      output);
+  }
+
+  @Test
+  public void testKarafFeatures() throws IOException, MojoExecutionException {
+    String output = new KarafFeaturesEmitter(null, "feature", "1.0.0").render(createTarget(), new SystemStreamLog());
+    assertTrue(output.contains("<feature name=\"feature\" version=\"1.0.0\" description=\"Test\">"));
+    assertTrue(output.contains("<bundle>mvn:test/a/1.0</bundle>"));
+    assertTrue(output.contains("<bundle>wrap:mvn:test/b/1.0</bundle>"));
+  }
+
+  @Test
+  public void testLayeredTarget() throws IOException, MojoExecutionException {
+    ResolvedTarget target = createTarget();
+    TargetLayers layers = new TargetLayers("te*:a", null);
+    File baseFile = new File(folder.getRoot(), "base.target");
+    File productFile = new File(folder.getRoot(), "product.target");
+    String aPath = new File(folder.getRoot(), "a").getAbsolutePath();
+    String bPath = new File(folder.getRoot(), "b").getAbsolutePath();
+
+    new BaseTargetEmitter(baseFile, "Base", layers).emit(target, new SystemStreamLog());
+    new PdeTargetEmitter(productFile, false, layers, baseFile, null).emit(target, new SystemStreamLog());
+    String base = FileUtils.fileRead(baseFile);
+    String product = FileUtils.fileRead(productFile);
+    assertTrue(base.contains("<target name=\"Base\" sequenceNumber=\"1\">"));
+    assertTrue(base.contains(aPath));
+    assertFalse(base.contains(bPath));
+    assertTrue(product.contains("<location type=\"Target\" uri=\"" + baseFile.toURI() + "\"/>"));
+    assertTrue(product.contains(bPath));
+    assertFalse(product.contains(aPath));
+
+    /* The base stays the same as long as its artifacts do */
+    long modified = baseFile.lastModified() - 10000;
+    assertTrue(baseFile.setLastModified(modified));
+    new BaseTargetEmitter(baseFile, "Base", layers).emit(target, new SystemStreamLog());
+    assertEquals(modified, baseFile.lastModified());
+
+    new BaseTargetEmitter(baseFile, "Base", new TargetLayers("test", "*:a")).emit(target, new SystemStreamLog());
+    base = FileUtils.fileRead(baseFile);
+    assertTrue(base.contains("<target name=\"Base\" sequenceNumber=\"2\">"));
+    assertTrue(base.contains(bPath));
+    assertFalse(base.contains(aPath));
+
+    /* The base target is built for the same platform as the product */
+    new BaseTargetEmitter(baseFile, "Base", layers, new TargetEnvironment("linux", "gtk", "x86_64")).emit(target,
+      new SystemStreamLog());
+    base = FileUtils.fileRead(baseFile);
+    assertTrue(base.contains("<target name=\"Base\" sequenceNumber=\"3\">"));
+    assertTrue(base.contains("<environment>\n\t<os>linux</os>\n\t<ws>gtk</ws>\n\t<arch>x86_64</arch>\n</environment>"));
+  }
+
+  @Test
+  public void testBaseTargetSharedByProducts() throws IOException, MojoExecutionException {
+    ResolvedTarget target = createTarget();
+    File baseFile = new File(folder.getRoot(), "base.target");
+    File first = folder.newFile("first.target");
+    File second = folder.newFile("second.target");
+    String aPath = new File(folder.getRoot(), "a").getAbsolutePath();
+    String bPath = new File(folder.getRoot(), "b").getAbsolutePath();
+
+    /* The products resolve different base artifacts, and the base holds both */
+    new BaseTargetEmitter(baseFile, "Base", new TargetLayers("test:a", null), null, first).emit(target,
+      new SystemStreamLog());
+    new BaseTargetEmitter(baseFile, "Base", new TargetLayers("test:b", null), null, second).emit(target,
+      new SystemStreamLog());
+    String base = FileUtils.fileRead(baseFile);
+    assertTrue(base.contains("<target name=\"Base\" sequenceNumber=\"2\">"));
+    assertTrue(base.contains(aPath));
+    assertTrue(base.contains(bPath));
+
+    /* Building the products again, in any order, leaves it alone */
+    new BaseTargetEmitter(baseFile, "Base", new TargetLayers("test:a", null), null, first).emit(target,
+      new SystemStreamLog());
+    new BaseTargetEmitter(baseFile, "Base", new TargetLayers("test:b", null), null, second).emit(target,
+      new SystemStreamLog());
+    assertEquals(base, FileUtils.fileRead(baseFile));
+
+    /* A product that is gone no longer contributes */
+    assertTrue(second.delete());
+    new BaseTargetEmitter(baseFile, "Base", new TargetLayers("test:a", null), null, first).emit(target,
+      new SystemStreamLog());
+    base = FileUtils.fileRead(baseFile);
+    assertTrue(base.contains("<target name=\"Base\" sequenceNumber=\"3\">"));
+    assertFalse(base.contains(bPath));
+  }
+
+  @Test
+  public void testRepositoryIndex() throws IOException, MojoExecutionException {
+    Attributes manifest = new Attributes();
+    manifest.putValue("Bundle-SymbolicName", "test.c");
+    manifest.putValue("Bundle-Version", "2.0.0");
+    manifest.putValue("Export-Package", "test.c.api;version=2.0.0;uses:=\"test.d\"");
+    manifest.putValue("Import-Package", "test.d;version=\"[1.0,2)\",test.e;resolution:=optional");
+    manifest.putValue("Provide-Capability", "osgi.service;objectClass:List<String>=\"test.c.api.Service\"");
+    String resource = RepositoryIndexEmitter.describe(folder.newFile("c.jar"), manifest, new ArrayList<String>());
+    assertTrue(resource.contains("<attribute name=\"osgi.identity\" value=\"test.c\"/>"));
+    assertTrue(resource.contains("<attribute name=\"version\" type=\"Version\" value=\"2.0.0\"/>"));
+    assertTrue(resource.contains("<attribute name=\"osgi.wiring.package\" value=\"test.c.api\"/>"));
+    assertTrue(resource.contains("<directive name=\"uses\" value=\"test.d\"/>"));
+    assertTrue(resource.contains(
+      "<directive name=\"filter\" value=\"(&amp;(osgi.wiring.package=test.d)(version&gt;=1.0)(!(version&gt;=2)))\"/>"));
+    assertTrue(resource.contains("<directive name=\"filter\" value=\"(osgi.wiring.package=test.e)\"/>\n"
+      + "      <directive name=\"resolution\" value=\"optional\"/>"));
+    assertTrue(resource.contains("<capability namespace=\"osgi.service\">\n"
+      + "      <attribute name=\"objectClass\" type=\"List&lt;String&gt;\" value=\"test.c.api.Service\"/>"));
+
+    File indexFile = new File(folder.getRoot(), "index.xml.gz");
+    FileStampCache cache = new FileStampCache(new File(folder.getRoot(), "index.properties"));
+    ResolvedTarget target = createTarget();
+    new RepositoryIndexEmitter(indexFile, cache, 2).emit(target, new SystemStreamLog());
+    String index;
+    try (InputStreamReader reader =
+      new InputStreamReader(new GZIPInputStream(new FileInputStream(indexFile)), StandardCharsets.UTF_8)) {
+      index = IOUtil.toString(reader);
+    }
+    assertTrue(index.contains("increment=\"0\""));
+    assertTrue(index.contains("<attribute name=\"osgi.identity\" value=\"test.a\"/>"));
+    assertFalse(index.contains("test.b"));
+
+    /* Nothing changed, so the index is left alone */
+    long modified = indexFile.lastModified() - 10000;
+    assertTrue(indexFile.setLastModified(modified));
+    new RepositoryIndexEmitter(indexFile, cache, 2).emit(target, new SystemStreamLog());
+    assertEquals(modified, indexFile.lastModified());
+
+    /* The same holds for a new execution, which takes the descriptions from the cache file */
+    cache.save();
+    new RepositoryIndexEmitter(indexFile, new FileStampCache(new File(folder.getRoot(), "index.properties")), 2)
+      .emit(target, new SystemStreamLog());
+    assertEquals(modified, indexFile.lastModified());
+  }
+
+  @Test
+  public void testRepositoryIndexFilters() throws IOException {
+    assertEquals("", RepositoryIndexEmitter.getExecutionEnvironmentFilter(null));
+    assertEquals("(&(osgi.ee=JavaSE)(version=1.8))",
+      RepositoryIndexEmitter.getExecutionEnvironmentFilter("JavaSE-1.8"));
+    assertEquals("(|(&(osgi.ee=JavaSE)(version=1.5))(&(osgi.ee=CDC/Foundation)(version=1.0))"
+      + "(&(osgi.ee=JavaSE/compact1)(version=1.8))(osgi.ee=Custom\\(EE\\)))",
+      RepositoryIndexEmitter.getExecutionEnvironmentFilter(
+        "J2SE-1.5, CDC-1.0/Foundation-1.0, JavaSE/compact1-1.8, Custom(EE)"));
+
+    Attributes manifest = new Attributes();
+    manifest.putValue("Bundle-SymbolicName", "test.f");
+    manifest.putValue("Bundle-RequiredExecutionEnvironment", "JavaSE-1.8");
+    manifest.putValue("Require-Bundle", "test.g*");
+    manifest.putValue("Import-Service", "test.(Service)");
+    String resource = RepositoryIndexEmitter.describe(folder.newFile("f.jar"), manifest, new ArrayList<String>());
+    assertTrue(resource.contains("<requirement namespace=\"osgi.ee\">\n"
+      + "      <directive name=\"filter\" value=\"(&amp;(osgi.ee=JavaSE)(version=1.8))\"/>"));
+    assertTrue(resource.contains("<directive name=\"filter\" value=\"(osgi.wiring.bundle=test.g\\*)\"/>"));
+    assertTrue(resource.contains("<directive name=\"filter\" value=\"(objectClass=test.\\(Service\\))\"/>"));
+
+    /* A bundle that already requires an execution environment keeps its own requirement */
+    manifest.putValue("Require-Capability", "osgi.ee;filter:=\"(osgi.ee=JavaSE)\"");
+    resource = RepositoryIndexEmitter.describe(folder.newFile("f2.jar"), manifest, new ArrayList<String>());
+    assertEquals(resource.indexOf("namespace=\"osgi.ee\""), resource.lastIndexOf("namespace=\"osgi.ee\""));
+    assertFalse(resource.contains("version=1.8"));
+  }
+
+  @Test
+  public void testRepositoryIndexInvalidRanges() throws IOException {
+    Attributes manifest = new Attributes();
+    manifest.putValue("Bundle-SymbolicName", "test.h");
+    manifest.putValue("Import-Package", "test.i;version=\"[1.0\"");
+    manifest.putValue("Fragment-Host", "test.j;bundle-version=\"(1.0 2.0)\"");
+    List<String> invalid = new ArrayList<>();
+    String resource = RepositoryIndexEmitter.describe(folder.newFile("h.jar"), manifest, invalid);
+    assertTrue(resource.contains("<directive name=\"filter\" value=\"(osgi.wiring.package=test.i)\"/>"));
+    assertTrue(resource.contains("<directive name=\"filter\" value=\"(osgi.wiring.host=test.j)\"/>"));
+    assertEquals(Arrays.asList("h.jar has an invalid version range in its Import-Package: [1.0",
+      "h.jar has an invalid version range in its Fragment-Host: (1.0 2.0)"), invalid);
+  }
+
+  @Test
+  public void testRepositoryIndexCacheOnlyKeepsTheTarget() throws IOException, MojoExecutionException {
+    File indexFile = new File(folder.getRoot(), "index.xml");
+    File cacheFile = new File(folder.getRoot(), "index.properties");
+    File gone = folder.newFile("gone.jar");
+    FileStampCache cache = new FileStampCache(cacheFile);
+    cache.put(gone, "-");
+    cache.save();
+    new RepositoryIndexEmitter(indexFile, new FileStampCache(cacheFile), 1).emit(createTarget(),
+      new SystemStreamLog());
+    String cached = FileUtils.fileRead(cacheFile, "UTF-8");
+    assertFalse(cached, cached.contains("gone.jar"));
+    assertTrue(cached, cached.contains("a-1.0.jar"));
+  }
+}
@@ -0,0 +1,83 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileStampCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testValuePersists() throws IOException {
+    File source = folder.newFile("source.jar");
+    FileUtils.fileWrite(source, "UTF-8", "contents");
+    File cacheFile = new File(folder.getRoot(), "cache/cache.properties");
+
+    FileStampCache cache = new FileStampCache(cacheFile);
+    assertNull(cache.get(source));
+    cache.put(source, "value:with:colons");
+    cache.save();
+
+    assertEquals("value:with:colons", new FileStampCache(cacheFile).get(source));
+  }
+
+  @Test
+  public void testChangedFileIsInvalidated() throws IOException {
+    File source = folder.newFile("source.jar");
+    FileUtils.fileWrite(source, "UTF-8", "contents");
+    FileStampCache cache = new FileStampCache(new File(folder.getRoot(), "cache.properties"));
+    cache.put(source, "value");
+
+    FileUtils.fileWrite(source, "UTF-8", "longer contents");
+    assertNull(cache.get(source));
+  }
+
+  @Test
+  public void testStampPrefixIsInvalidated() throws IOException {
+    File source = folder.newFile("source.jar");
+    FileUtils.fileWrite(source, "UTF-8", "contents");
+    FileStampCache cache = new FileStampCache(new File(folder.getRoot(), "cache.properties"));
+    assertTrue(source.setLastModified(10000000L));
+    cache.put(source, "value");
+
+    /* The new stamp is a prefix of the stored one */
+    assertTrue(source.setLastModified(1000000L));
+    assertNull(cache.get(source));
+  }
+
+  @Test
+  public void testCorruptCacheIsIgnored() throws IOException {
+    File cacheFile = folder.newFile("cache.properties");
+    FileUtils.fileWrite(cacheFile, "UTF-8", "bad=\\u00");
+    assertNull(new FileStampCache(cacheFile).get(cacheFile));
+  }
+
+  @Test
+  public void testRetain() throws IOException {
+    File kept = folder.newFile("kept.jar");
+    File dropped = folder.newFile("dropped.jar");
+    File cacheFile = new File(folder.getRoot(), "cache.properties");
+    FileStampCache cache = new FileStampCache(cacheFile);
+    cache.put(kept, "kept");
+    cache.put(dropped, "dropped");
+    cache.save();
+
+    cache = new FileStampCache(cacheFile);
+    cache.retain(Collections.singleton(kept));
+    cache.save();
+    cache = new FileStampCache(cacheFile);
+    assertEquals("kept", cache.get(kept));
+    assertNull(cache.get(dropped));
+  }
+}
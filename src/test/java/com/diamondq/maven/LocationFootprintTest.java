@@ -0,0 +1,75 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocationFootprintTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static File jar(File directory, String name, String... entries) throws IOException {
+    assertTrue(directory.isDirectory() || directory.mkdirs());
+    File file = new File(directory, name);
+    try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(file))) {
+      for (String entry : entries) {
+        stream.putNextEntry(new ZipEntry(entry));
+        stream.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void testOnlyTheChildrenOfTheLocationAreScanned() throws IOException {
+    File location = folder.newFolder("location");
+    File artifact = jar(location, "a-1.0.jar", "META-INF/MANIFEST.MF", "a/A.class", "a/B.class");
+    jar(location, "a-1.0-sources.jar", "a/A.java");
+
+    /* Only the manifest of a directory shaped bundle is read, not its classes or nested jars */
+    File bundle = new File(location, "b_1.0.0");
+    assertTrue(new File(bundle, "META-INF").mkdirs());
+    FileUtils.fileWrite(new File(bundle, "META-INF/MANIFEST.MF"), "UTF-8", "Manifest-Version: 1.0\n");
+    FileUtils.fileWrite(new File(bundle, "B.class"), "UTF-8", "");
+    jar(new File(bundle, "lib"), "nested.jar", "n/N.class");
+
+    LocationFootprint footprint =
+      LocationFootprint.scan(location, Collections.singleton(artifact), Collections.singleton("test:a:1.0"));
+    assertEquals(3, footprint.getFiles());
+    assertEquals(2, footprint.getJars());
+    assertEquals(4, footprint.getJarEntries());
+    assertEquals(2, footprint.getClasses());
+    assertEquals(Collections.singletonList("a-1.0-sources.jar"), footprint.getForeignJars());
+    assertEquals(artifact.length() + new File(location, "a-1.0-sources.jar").length()
+      + new File(bundle, "META-INF/MANIFEST.MF").length(), footprint.getBytes());
+  }
+
+  @Test
+  public void testPluginsDirectory() throws IOException {
+    File location = folder.newFolder("location");
+    jar(location, "ignored.jar", "i/I.class");
+    File artifact = jar(new File(location, "plugins"), "c_1.0.0.jar", "c/C.class");
+
+    LocationFootprint footprint =
+      LocationFootprint.scan(location, Collections.singleton(artifact), Collections.singleton("test:c:1.0"));
+    assertEquals(1, footprint.getFiles());
+    assertEquals(1, footprint.getClasses());
+    assertEquals(Collections.<String> emptyList(), footprint.getForeignJars());
+
+    String json = AnalyzeTarget.toJson("test", Arrays.asList(footprint));
+    assertTrue(json, json.contains("\"artifacts\": [\"test:c:1.0\"], \"files\": 1"));
+  }
+}
@@ -0,0 +1,60 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LockFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    File repository = folder.newFolder("repository");
+    File inRepository = new File(repository, "test/a/1.0/a-1.0.jar");
+    File outside = folder.newFile("b.jar");
+    String path = LockFile.toPath(inRepository, repository);
+    assertEquals("test/a/1.0/a-1.0.jar", path);
+    assertEquals(outside.getAbsolutePath(), LockFile.toPath(outside, repository));
+
+    LockFile lock = new LockFile("abc", Arrays.asList(
+      new LockFile.Entry("test", "a", "jar", null, "1.0", "compile", path, 10, "0123"),
+      new LockFile.Entry("test", "b", "jar", "sources", "1.0-20200101.101010-1", null,
+        LockFile.toPath(outside, repository), 0, "4567")));
+    File file = new File(folder.getRoot(), "lock/target.lock");
+    assertTrue(lock.write(file));
+    assertFalse(lock.write(file));
+
+    LockFile read = LockFile.read(file);
+    assertEquals("abc", read.getHash());
+    assertEquals(2, read.getEntries().size());
+    LockFile.Entry a = read.getEntries().get(0);
+    assertEquals("", a.classifier);
+    assertEquals(10, a.size);
+    assertEquals(inRepository, a.getFile(repository));
+    LockFile.Entry b = read.getEntries().get(1);
+    assertEquals("sources", b.classifier);
+    assertEquals("1.0-20200101.101010-1", b.version);
+    assertEquals(outside.getAbsoluteFile(), b.getFile(repository));
+    assertEquals(lock.render(), read.render());
+  }
+
+  @Test
+  public void testInvalidLockFileIsIgnored() throws IOException {
+    File file = folder.newFile("target.lock");
+    assertNull(LockFile.read(new File(folder.getRoot(), "missing.lock")));
+    FileUtils.fileWrite(file, "UTF-8", "hash=abc\nnot a lock line\n");
+    assertNull(LockFile.read(file));
+  }
+}
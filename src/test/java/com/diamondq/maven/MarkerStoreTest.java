@@ -0,0 +1,63 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.shared.artifact.filter.collection.ArtifactFilterException;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MarkerStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Artifact artifact(String artifactId) {
+    return new DefaultArtifact("test", artifactId, "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+  }
+
+  @Test
+  public void testMarksArePersistedInOneFile() throws IOException {
+    File storeFile = new File(folder.getRoot(), "markers/markers.lst");
+    MarkerStore store = new MarkerStore(storeFile);
+    assertFalse(store.isMarked(artifact("a")));
+
+    assertEquals(2, store.markAll(Arrays.asList(artifact("a"), artifact("b"))));
+    assertEquals(1, store.markAll(Arrays.asList(artifact("b"), artifact("c"))));
+    assertEquals(0, store.markAll(Collections.singletonList(artifact("a"))));
+
+    MarkerStore reloaded = new MarkerStore(storeFile);
+    assertEquals(3, reloaded.size());
+    assertTrue(reloaded.isMarked(artifact("a")));
+    assertTrue(reloaded.isMarked(artifact("c")));
+    assertFalse(reloaded.isMarked(artifact("d")));
+
+    /* Only the new markers were appended */
+    assertEquals(3, FileUtils.fileRead(storeFile, "UTF-8").split("\n").length);
+    assertEquals(1, storeFile.getParentFile().list().length);
+  }
+
+  @Test
+  public void testFilterKeepsUnmarkedInOrder() throws IOException, ArtifactFilterException {
+    MarkerStore store = new MarkerStore(new File(folder.getRoot(), "markers.lst"));
+    store.markAll(Collections.singletonList(artifact("b")));
+
+    Set<Artifact> artifacts = new LinkedHashSet<>(Arrays.asList(artifact("c"), artifact("b"), artifact("a")));
+    Set<Artifact> unmarked = store.newUnmarkedFilter().filter(artifacts);
+    assertEquals(Arrays.asList(artifact("c"), artifact("a")), new ArrayList<>(unmarked));
+  }
+}
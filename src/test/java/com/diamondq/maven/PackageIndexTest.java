@@ -0,0 +1,147 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugins.dependency.utils.DependencyStatusSets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PackageIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<PackageIndex.Entry> createEntries() {
+    List<PackageIndex.Entry> entries = new ArrayList<>();
+    entries.add(new PackageIndex.Entry("org.example.b", "1.0.0", "example.b", "1.0.0", "/repo/b.jar"));
+    entries.add(new PackageIndex.Entry("org.example.a", "1.0.0", "example.a", "1.0.0", "/repo/a-1.jar"));
+    entries.add(new PackageIndex.Entry("org.example.a", "2.0.0", "example.a", "2.0.0", "/repo/a-2.jar"));
+    entries.add(new PackageIndex.Entry("org.example.a.impl", "1.0.0", "example.a", "1.0.0", "/repo/a-1.jar"));
+    return entries;
+  }
+
+  @Test
+  public void testLookup() throws IOException {
+    File file = folder.newFile("packages.idx");
+    assertTrue(PackageIndex.write(file, createEntries()));
+    PackageIndex index = PackageIndex.open(file);
+    assertEquals(4, index.size());
+
+    /* The highest version comes first */
+    List<PackageIndex.Entry> entries = index.findPackage("org.example.a");
+    assertEquals(2, entries.size());
+    assertEquals("2.0.0", entries.get(0).version);
+    assertEquals("/repo/a-2.jar", entries.get(0).path);
+    assertEquals("example.a", entries.get(1).symbolicName);
+
+    assertEquals(1, index.findPackage("org.example.b").size());
+    assertTrue(index.findPackage("org.example").isEmpty());
+    assertTrue(index.findPackage("org.example.c").isEmpty());
+    assertEquals("org.example.a.impl", index.findClass("org/example/a/impl/Foo$Bar.class").get(0).packageName);
+    assertNull(PackageIndex.getPackageName("Foo"));
+  }
+
+  @Test
+  public void testUnchanged() throws IOException {
+    File file = new File(folder.getRoot(), "index/packages.idx");
+    assertTrue(PackageIndex.write(file, createEntries()));
+    assertFalse(PackageIndex.write(file, createEntries()));
+    List<PackageIndex.Entry> entries = createEntries();
+    entries.remove(0);
+    assertTrue(PackageIndex.write(file, entries));
+    assertEquals(3, PackageIndex.open(file).size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAnIndex() throws IOException {
+    PackageIndex.wrap("not an index".getBytes("UTF-8"));
+  }
+
+  @Test
+  public void testDescribe() {
+    Attributes manifest = new Attributes();
+    manifest.putValue("Bundle-SymbolicName", "example.a;singleton:=true");
+    manifest.putValue("Bundle-Version", "1.2.0");
+    manifest.putValue("Export-Package", "org.example.a;org.example.b;version=\"1.1\";uses:=\"x,y\",org.example.c");
+    assertEquals("example.a 1.2.0 org.example.a 1.1 org.example.b 1.1 org.example.c 0.0.0",
+      PackageIndexEmitter.describe(manifest));
+    assertEquals("-", PackageIndexEmitter.describe(null));
+  }
+
+  private static void writeBundle(File file, String version) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue(BundleManifests.BUNDLE_SYMBOLIC_NAME, "example.a");
+    manifest.getMainAttributes().putValue(BundleManifests.BUNDLE_VERSION, version);
+    manifest.getMainAttributes().putValue(ReachabilityPruner.EXPORT_PACKAGE, "org.example.a;version=" + version);
+    try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(file), manifest)) {
+      /* Only the manifest */
+    }
+  }
+
+  /**
+   * Emits the index like a new execution would: with a fresh target and a reloaded cache
+   */
+  private int emit(File indexFile, Artifact artifact) throws MojoExecutionException {
+    final AtomicInteger reads = new AtomicInteger();
+    Map<Artifact, File> locations = new LinkedHashMap<>();
+    locations.put(artifact, artifact.getFile().getParentFile());
+    ResolvedTarget target = new ResolvedTarget("Test", new DependencyStatusSets(), locations) {
+      @Override
+      public Attributes getManifest(Artifact artifact) {
+        reads.incrementAndGet();
+        return super.getManifest(artifact);
+      }
+    };
+    new PackageIndexEmitter(indexFile, new FileStampCache(new File(folder.getRoot(), "packages.properties")), 1)
+      .emit(target, new SystemStreamLog());
+    return reads.get();
+  }
+
+  @Test
+  public void testEmitterOnlyReadsChangedManifests() throws IOException, MojoExecutionException {
+    File jar = new File(folder.getRoot(), "a-1.0.jar");
+    writeBundle(jar, "1.0.0");
+    Artifact artifact =
+      new DefaultArtifact("test", "a", "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    artifact.setFile(jar);
+    File indexFile = new File(folder.getRoot(), "packages.idx");
+
+    assertEquals(1, emit(indexFile, artifact));
+    assertEquals("1.0.0", PackageIndex.open(indexFile).findPackage("org.example.a").get(0).version);
+
+    /* A cache hit doesn't open the jar, and leaves the index alone */
+    long modified = indexFile.lastModified() - 10000;
+    assertTrue(indexFile.setLastModified(modified));
+    assertEquals(0, emit(indexFile, artifact));
+    assertEquals(modified, indexFile.lastModified());
+
+    /* A changed jar is read again */
+    writeBundle(jar, "1.10.0");
+    assertTrue(jar.setLastModified(jar.lastModified() + 10000));
+    assertEquals(1, emit(indexFile, artifact));
+    assertEquals("1.10.0", PackageIndex.open(indexFile).findPackage("org.example.a").get(0).version);
+  }
+}
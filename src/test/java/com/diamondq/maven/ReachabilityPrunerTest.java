@@ -0,0 +1,97 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.Test;
+
+public class ReachabilityPrunerTest {
+
+  private final Map<Artifact, Attributes> manifests = new LinkedHashMap<>();
+
+  private Artifact bundle(String name, String version, String... headers) {
+    Artifact artifact =
+      new DefaultArtifact("test", name, version, "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    Attributes attributes = new Attributes();
+    attributes.putValue(BundleManifests.BUNDLE_SYMBOLIC_NAME, name + ";singleton:=true");
+    attributes.putValue(BundleManifests.BUNDLE_VERSION, version);
+    for (int i = 0; i < headers.length; i += 2)
+      attributes.putValue(headers[i], headers[i + 1]);
+    manifests.put(artifact, attributes);
+    return artifact;
+  }
+
+  @Test
+  public void testHeaderParsing() {
+    List<OsgiHeaders.Clause> clauses = OsgiHeaders
+      .parse("a.b;c.d;version=\"[1.0,2)\";resolution:=optional, e;uses:=\"a.b,c.d\";x=1,f");
+    assertEquals(3, clauses.size());
+    assertEquals(Arrays.asList("a.b", "c.d"), clauses.get(0).getPaths());
+    assertEquals("[1.0,2)", clauses.get(0).getAttribute("version"));
+    assertEquals("optional", clauses.get(0).getDirective("resolution"));
+    assertEquals("a.b,c.d", clauses.get(1).getDirective("uses"));
+    assertEquals("1", clauses.get(1).getAttribute("x"));
+    assertEquals(Collections.singletonList("f"), clauses.get(2).getPaths());
+  }
+
+  @Test
+  public void testVersionRanges() {
+    assertTrue(VersionRange.parse("[1.0,2)").includes("1.5.3.qualifier"));
+    assertFalse(VersionRange.parse("[1.0,2)").includes("2.0.0"));
+    assertTrue(VersionRange.parse("(1.0,2]").includes("2"));
+    assertFalse(VersionRange.parse("(1.0,2]").includes("1.0.0"));
+    assertTrue(VersionRange.parse("1.2").includes("10.0"));
+    assertFalse(VersionRange.parse("1.2").includes("1.1.9"));
+    assertTrue(VersionRange.parse(null).includes(null));
+  }
+
+  @Test
+  public void testClosure() {
+    Artifact root = bundle("root", "1.0.0", ReachabilityPruner.IMPORT_PACKAGE,
+      "api;version=\"[1.0,2)\",opt;resolution:=optional,org.osgi.framework", ReachabilityPruner.REQUIRE_BUNDLE,
+      "util;bundle-version=\"1.0\"");
+    Artifact api1 = bundle("api1", "1.0.0", ReachabilityPruner.EXPORT_PACKAGE, "api;version=1.1");
+    Artifact api2 = bundle("api2", "2.0.0", ReachabilityPruner.EXPORT_PACKAGE, "api;version=2.0");
+    Artifact util = bundle("util", "1.2.0", ReachabilityPruner.IMPORT_PACKAGE, "deep");
+    Artifact deep = bundle("deep", "1.0.0", ReachabilityPruner.EXPORT_PACKAGE, "deep");
+    Artifact fragment = bundle("util.fragment", "1.0.0", ReachabilityPruner.FRAGMENT_HOST, "util");
+    Artifact opt = bundle("opt", "1.0.0", ReachabilityPruner.EXPORT_PACKAGE, "opt");
+    Artifact unused = bundle("unused", "1.0.0");
+    Artifact plain =
+      new DefaultArtifact("test", "plain", "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    manifests.put(plain, null);
+
+    ReachabilityPruner pruner = new ReachabilityPruner(manifests);
+    assertEquals(Arrays.asList(root, api1, util, deep, fragment),
+      new ArrayList<>(pruner.getClosure(Collections.singleton(root))));
+    assertTrue(pruner.getUnresolved().contains("package org.osgi.framework 0.0.0"));
+    assertFalse(pruner.getClosure(Collections.singleton(root)).contains(api2));
+    assertFalse(pruner.getClosure(Collections.singleton(root)).contains(opt));
+    assertFalse(pruner.getClosure(Collections.singleton(root)).contains(unused));
+  }
+
+  @Test
+  public void testMalformedRangeIsUnbounded() {
+    Artifact root = bundle("root", "1.0.0", ReachabilityPruner.IMPORT_PACKAGE, "api;version=\"[1.0\"",
+      ReachabilityPruner.REQUIRE_BUNDLE, "util;bundle-version=\"(1.0,2.0\"");
+    Artifact api = bundle("api", "3.0.0", ReachabilityPruner.EXPORT_PACKAGE, "api;version=3.0");
+    Artifact util = bundle("util", "1.0.0");
+
+    ReachabilityPruner pruner = new ReachabilityPruner(manifests);
+    assertEquals(Arrays.asList(root, api, util), new ArrayList<>(pruner.getClosure(Collections.singleton(root))));
+    assertEquals(2, pruner.getInvalidRanges().size());
+    assertTrue(pruner.getInvalidRanges().iterator().next().contains(root.toString()));
+  }
+}
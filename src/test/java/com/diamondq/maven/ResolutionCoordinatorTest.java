@@ -0,0 +1,114 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.Test;
+
+public class ResolutionCoordinatorTest {
+
+  @Test
+  public void testIdenticalResolutionsAreJoined() throws Exception {
+    final CountDownLatch joined = new CountDownLatch(3);
+    final ResolutionCoordinator coordinator = new ResolutionCoordinator(0) {
+      @Override
+      protected void joined(String key) {
+        joined.countDown();
+      }
+    };
+    final Artifact artifact =
+      new DefaultArtifact("test", "a", "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<Artifact> resolution = new Callable<Artifact>() {
+      @Override
+      public Artifact call() throws Exception {
+        calls.incrementAndGet();
+        started.countDown();
+        release.await();
+        return artifact;
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Artifact>> results = new ArrayList<>();
+      results.add(executor.submit(new Callable<Artifact>() {
+        @Override
+        public Artifact call() throws Exception {
+          return coordinator.resolve("test:a:jar::1.0", resolution);
+        }
+      }));
+      started.await();
+      for (int i = 0; i < 3; i++) {
+        results.add(executor.submit(new Callable<Artifact>() {
+          @Override
+          public Artifact call() throws Exception {
+            return coordinator.resolve("test:a:jar::1.0", resolution);
+          }
+        }));
+      }
+      /* Only finish the first resolution once every other caller has joined it */
+      assertTrue(joined.await(10, TimeUnit.SECONDS));
+      release.countDown();
+      for (Future<Artifact> result : results)
+        assertSame(artifact, result.get(10, TimeUnit.SECONDS));
+      assertEquals(1, calls.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsCapped() throws Exception {
+    final ResolutionCoordinator coordinator = new ResolutionCoordinator(2);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Artifact>> results = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        final String key = "test:a" + i + ":jar::1.0";
+        results.add(executor.submit(new Callable<Artifact>() {
+          @Override
+          public Artifact call() throws Exception {
+            return coordinator.resolve(key, new Callable<Artifact>() {
+              @Override
+              public Artifact call() throws Exception {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                  maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return null;
+              }
+            });
+          }
+        }));
+      }
+      for (Future<Artifact> result : results)
+        result.get(10, TimeUnit.SECONDS);
+      assertEquals(2, maxRunning.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+}
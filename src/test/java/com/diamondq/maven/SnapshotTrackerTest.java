@@ -0,0 +1,76 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotTrackerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private SnapshotTracker record(Map<Artifact, File> files) throws IOException {
+    SnapshotTracker tracker = new SnapshotTracker(new File(folder.getRoot(), "state/snapshots.properties"),
+      new FileStampCache(new File(folder.getRoot(), "state/checksums.properties")));
+    tracker.record(files);
+    return tracker;
+  }
+
+  @Test
+  public void testOnlyChangedBytesAreChanges() throws IOException {
+    File file = folder.newFile("a-1.0-SNAPSHOT.jar");
+    FileUtils.fileWrite(file, "UTF-8", "first");
+    Artifact artifact =
+      new DefaultArtifact("test", "a", "1.0-SNAPSHOT", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    Map<Artifact, File> files = Collections.singletonMap(artifact, file);
+
+    SnapshotTracker tracker = record(files);
+    assertTrue(tracker.isChanged());
+    tracker.save();
+
+    /* Touching the file doesn't change it */
+    assertTrue(file.setLastModified(file.lastModified() - 10000));
+    tracker = record(files);
+    assertFalse(tracker.isChanged());
+    tracker.save();
+
+    FileUtils.fileWrite(file, "UTF-8", "second");
+    assertTrue(record(files).isChanged());
+  }
+
+  @Test
+  public void testChangedLocationsAreChanges() throws IOException {
+    Map<Artifact, File> files = Collections.emptyMap();
+    SnapshotTracker tracker = record(files);
+    tracker.recordLocations(Arrays.asList(new File("a"), new File("b")));
+    tracker.save();
+
+    tracker = record(files);
+    tracker.recordLocations(Arrays.asList(new File("a"), new File("b")));
+    assertFalse(tracker.isChanged());
+    tracker = record(files);
+    tracker.recordLocations(Arrays.asList(new File("a"), new File("c")));
+    assertTrue(tracker.isChanged());
+  }
+
+  @Test
+  public void testReleasesAreIgnored() throws IOException {
+    File file = folder.newFile("a-1.0.jar");
+    Artifact artifact =
+      new DefaultArtifact("test", "a", "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+    assertFalse(record(Collections.singletonMap(artifact, file)).isChanged());
+  }
+}
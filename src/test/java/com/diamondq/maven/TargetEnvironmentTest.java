@@ -0,0 +1,68 @@
+package com.diamondq.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.jar.Attributes;
+
+import org.junit.Test;
+
+public class TargetEnvironmentTest {
+
+  private static Attributes createManifest(String platformFilter, String nativeCode) {
+    Attributes attributes = new Attributes();
+    if (platformFilter != null)
+      attributes.putValue(TargetEnvironment.ECLIPSE_PLATFORM_FILTER, platformFilter);
+    if (nativeCode != null)
+      attributes.putValue(TargetEnvironment.BUNDLE_NATIVE_CODE, nativeCode);
+    return attributes;
+  }
+
+  @Test
+  public void testFilter() {
+    TargetEnvironment linux = new TargetEnvironment("linux", "gtk", "x86_64");
+    assertEquals(Boolean.TRUE, LdapFilter.evaluate("(& (osgi.os=linux) (osgi.ws=gtk) (osgi.arch=x86_64))",
+      linux.getProperties()));
+    assertEquals(Boolean.FALSE, LdapFilter.evaluate("(&(osgi.os=win32)(osgi.arch=x86_64))", linux.getProperties()));
+    assertEquals(Boolean.TRUE, LdapFilter.evaluate("(|(osgi.os=win32)(osgi.os=lin*))", linux.getProperties()));
+    assertEquals(Boolean.TRUE, LdapFilter.evaluate("(!(osgi.os=macosx))", linux.getProperties()));
+
+    /* Whatever isn't configured is unknown, and never excludes anything */
+    TargetEnvironment any = new TargetEnvironment("linux", null, null);
+    assertNull(LdapFilter.evaluate("(& (osgi.os=linux) (osgi.arch=aarch64))", any.getProperties()));
+    assertNull(LdapFilter.evaluate("(!(osgi.ws=cocoa))", any.getProperties()));
+    assertEquals(Boolean.FALSE, LdapFilter.evaluate("(& (osgi.os=win32) (osgi.arch=aarch64))", any.getProperties()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFilter() {
+    LdapFilter.evaluate("(&(osgi.os=linux)", new TargetEnvironment("linux", null, null).getProperties());
+  }
+
+  @Test
+  public void testPlatformFilter() {
+    TargetEnvironment linux = new TargetEnvironment("linux", "gtk", "x86_64");
+    assertTrue(linux.matches(null));
+    assertTrue(linux.matches(createManifest(null, null)));
+    assertTrue(linux.matches(createManifest("(& (osgi.os=linux) (osgi.ws=gtk) (osgi.arch=x86_64))", null)));
+    assertFalse(linux.matches(createManifest("(& (osgi.os=win32) (osgi.ws=win32) (osgi.arch=x86_64))", null)));
+    assertTrue(new TargetEnvironment(null, null, null)
+      .matches(createManifest("(& (osgi.os=win32) (osgi.ws=win32) (osgi.arch=x86_64))", null)));
+  }
+
+  @Test
+  public void testNativeCode() {
+    String nativeCode = "lib/win/x.dll;osname=Win32;osname=\"Windows 10\";processor=x86-64,"
+      + "lib/linux/libx.so;osname=Linux;processor=amd64;processor=aarch64";
+    assertTrue(new TargetEnvironment("win32", null, "x86_64").matches(createManifest(null, nativeCode)));
+    assertTrue(new TargetEnvironment("linux", null, "aarch64").matches(createManifest(null, nativeCode)));
+    assertTrue(new TargetEnvironment("linux", null, null).matches(createManifest(null, nativeCode)));
+    assertFalse(new TargetEnvironment("macosx", null, "aarch64").matches(createManifest(null, nativeCode)));
+    assertFalse(new TargetEnvironment("win32", null, "x86").matches(createManifest(null, nativeCode)));
+
+    /* The optional clause matches any platform */
+    assertTrue(new TargetEnvironment("macosx", null, null).matches(createManifest(null, nativeCode + ",*")));
+  }
+}